@@ -0,0 +1,380 @@
+package benchmark;
+
+import dao.CompressionStats;
+import dao.ProductDao;
+import dao.Query;
+import dao.StorageMode;
+import generator.DatabaseGenerator;
+import model.Product;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Замеры операций ProductDao на синтетических данных.
+ *
+ * Устроен по образцу JMH: для каждого сценария несколько разогревающих
+ * и измеряемых итераций фиксированной длительности, результат — среднее
+ * время операции с погрешностью. Итог пишется в JSON (формат близок к
+ * -rf json у JMH), чтобы сравнивать версии между собой.
+ *
+ * Запуск:
+ *   java benchmark.DaoBenchmark --rows 10000,1000000 --out bench.json
+ *   [--warmup 3] [--iterations 5] [--time-ms 1000] [--only findByKey,findAll] [--seed 42]
+ */
+public class DaoBenchmark {
+
+    private static final int HOT_KEYS = 100;
+
+    private final int warmup;
+    private final int iterations;
+    private final long iterationNanos;
+    private final long seed;
+    private final Set<String> only;
+    private final DatabaseGenerator generator;
+    private final List<Result> results = new ArrayList<>();
+
+    /** Одна операция; setup (если есть) выполняется перед каждым вызовом и не замеряется */
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    private interface Setup {
+        void run() throws Exception;
+    }
+
+    private static class Result {
+        final String benchmark;
+        final Map<String, Object> params;
+        final double[] samples; // мкс/операцию по итерациям
+        final String error;
+
+        Result(String benchmark, Map<String, Object> params, double[] samples, String error) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.samples = samples;
+            this.error = error;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double s : samples) {
+                sum += s;
+            }
+            return samples.length == 0 ? Double.NaN : sum / samples.length;
+        }
+
+        /** Полуширина доверительного интервала 99.9% (нормальное приближение, как оценка) */
+        double scoreError() {
+            if (samples.length < 2) {
+                return Double.NaN;
+            }
+            double mean = mean();
+            double sq = 0;
+            for (double s : samples) {
+                sq += (s - mean) * (s - mean);
+            }
+            return 3.29 * Math.sqrt(sq / (samples.length - 1)) / Math.sqrt(samples.length);
+        }
+    }
+
+    DaoBenchmark(int warmup, int iterations, long iterationMillis, long seed, Set<String> only) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        this.seed = seed;
+        this.only = only;
+        this.generator = new DatabaseGenerator(new DatabaseGenerator.Options().seed(seed));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parseArgs(args);
+        int[] sizes = Arrays.stream(opts.getOrDefault("rows", "10000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        Set<String> only = opts.containsKey("only")
+                ? new HashSet<>(Arrays.asList(opts.get("only").split(","))) : null;
+
+        DaoBenchmark bench = new DaoBenchmark(
+                Integer.parseInt(opts.getOrDefault("warmup", "3")),
+                Integer.parseInt(opts.getOrDefault("iterations", "5")),
+                Long.parseLong(opts.getOrDefault("time-ms", "1000")),
+                Long.parseLong(opts.getOrDefault("seed", "42")),
+                only);
+
+        for (int rows : sizes) {
+            bench.runAll(rows);
+        }
+
+        Path out = Paths.get(opts.getOrDefault("out", "bench-results.json"));
+        bench.writeJson(out);
+        System.out.println("Результаты: " + out.toAbsolutePath());
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        return opts;
+    }
+
+    /* ==================== Сценарии ==================== */
+
+    private void runAll(int rows) throws Exception {
+        Path dir = Files.createTempDirectory("dao-bench");
+        Path data = dir.resolve("bench.dat");
+        Path idx = dir.resolve("bench.idx");
+        Path backup = dir.resolve("backup");
+
+        System.out.println("== " + rows + " записей ==");
+        long start = System.nanoTime();
+        try (ProductDao db = new ProductDao(data, idx)) {
+            db.create();
+            load(db, rows);
+            db.backup(backup);
+        }
+        System.out.printf("загрузка: %.1f с%n", (System.nanoTime() - start) / 1e9);
+
+        ProductDao db = new ProductDao(data, idx);
+        db.open();
+        db.setAutoCompaction(0, 0); // фоновое уплотнение исказило бы замеры
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[] hotKeys = rnd.ints(HOT_KEYS, 1, rows + 1).toArray();
+        int[] counter = {0};
+        Product sample = db.findByKey(1 + rows / 2).orElseThrow();
+
+        try {
+            db.setRecordCache(0, 0);
+            bench("findByKey", params(rows, "cache", "cold"),
+                    () -> db.findByKey(1 + rnd.nextInt(rows)));
+            db.setRecordCache(10_000, 32L << 20);
+            bench("findByKey", params(rows, "cache", "hot"),
+                    () -> db.findByKey(hotKeys[counter[0]++ % HOT_KEYS]));
+            db.setRecordCache(0, 0);
+
+            // избирательность по индексам: name ~1/10000, brand ~1/15, category ~1/10,
+            // stock_quantity ~1/200; description без индекса — скан
+            bench("findByField", params(rows, "field", "name"),
+                    () -> db.findByField("name", sample.getName()));
+            bench("findByField", params(rows, "field", "brand"),
+                    () -> db.findByField("brand", sample.getBrand()));
+            bench("findByField", params(rows, "field", "category"),
+                    () -> db.findByField("category", sample.getCategory()));
+            bench("findByField", params(rows, "field", "stock_quantity"),
+                    () -> db.findByField("stock_quantity", sample.getStock_quantity()));
+            bench("findByField", params(rows, "field", "description"),
+                    () -> db.findByField("description", sample.getDescription()));
+
+            // диапазоны и префиксы по упорядоченным индексам: ~0.1% цен, ~5% остатков,
+            // ~1/15 названий (первые буквы названия — это бренд)
+            double price = sample.getPrice();
+            bench("findByRange", params(rows, "field", "price"),
+                    () -> db.findByRange("price", price - 25, price + 25));
+            bench("findByRange", params(rows, "field", "stock_quantity"),
+                    () -> db.findByRange("stock_quantity", 0, 9));
+            String prefix = sample.getName().substring(0, Math.min(4, sample.getName().length()));
+            bench("findByPrefix", params(rows, "field", "name"),
+                    () -> db.findByPrefix("name", prefix));
+
+            // несколько условий: планировщик читает по самому избирательному индексу (brand)
+            Query query = Query.and(Query.eq("category", sample.getCategory()),
+                    Query.eq("brand", sample.getBrand()), Query.gt("stock_quantity", 100));
+            bench("find", params(rows, "query", "category+brand+stock"), () -> db.find(query));
+
+            // агрегаты за один проход без создания Product
+            bench("aggregate", params(rows, "group", "category", "value", "price"),
+                    () -> db.aggregate("category", "price"));
+            bench("aggregate", params(rows, "group", "seller_id", "value", "stock_quantity"),
+                    () -> db.aggregate("seller_id", "stock_quantity"));
+
+            // те же числовые агрегаты и числовое условие без избирательного индекса — по колонкам
+            db.setColumnStoreEnabled(true);
+            bench("aggregate", params(rows, "group", "seller_id", "value", "stock_quantity", "columns", true),
+                    () -> db.aggregate("seller_id", "stock_quantity"));
+            Query numeric = Query.and(Query.gt("stock_quantity", 100), Query.lt("price", price));
+            bench("find", params(rows, "query", "stock+price", "columns", true), () -> db.find(numeric));
+            db.setColumnStoreEnabled(false);
+            bench("find", params(rows, "query", "stock+price", "columns", false), () -> db.find(numeric));
+
+            // полнотекстовый поиск: 100 самых релевантных по словам названия
+            db.setFullTextIndexEnabled(true);
+            bench("searchText", params(rows, "limit", 100, "index", true),
+                    () -> db.searchText(sample.getName(), 100));
+            db.setFullTextIndexEnabled(false);
+            bench("searchText", params(rows, "limit", 100, "index", false),
+                    () -> db.searchText(sample.getName(), 100));
+
+            bench("findAll", params(rows), db::findAll);
+            bench("streamAll", params(rows), () -> {
+                try (Stream<Product> s = db.streamAll()) {
+                    s.forEach(p -> { });
+                }
+            });
+
+            bench("updateByKey", params(rows), () -> {
+                int id = 1 + rnd.nextInt(rows);
+                db.updateByKey(id, generator.generateProduct(id, rnd));
+            });
+            bench("save", params(rows, "changes", 1000), () -> {
+                for (int i = 0; i < 1000; i++) {
+                    int id = 1 + rnd.nextInt(rows);
+                    db.updateByKey(id, generator.generateProduct(id, rnd));
+                }
+            }, db::save);
+
+            int[] nextId = {rows + 1};
+            bench("insert", params(rows), () -> {
+                int id = nextId[0]++;
+                db.insert(generator.generateProduct(id, rnd));
+            });
+
+            Path xlsx = dir.resolve("export.xlsx");
+            bench("exportToXlsx", params(rows), () -> db.exportToXlsx(xlsx));
+
+            bench("deleteByField", params(rows, "field", "category"),
+                    () -> db.restore(backup),
+                    () -> db.deleteByField("category", sample.getCategory()));
+
+            // тот же файл, сжатый блоками: чтение по ключу распаковывает один блок
+            db.close();
+            try (ProductDao compressed = new ProductDao(data, idx, StorageMode.COMPRESSED)) {
+                compressed.open(); // переписывает .dat блоками
+                compressed.setAutoCompaction(0, 0);
+                compressed.setRecordCache(0, 0);
+                bench("findByKey", params(rows, "cache", "cold", "storage", "compressed"),
+                        () -> compressed.findByKey(1 + rnd.nextInt(rows)));
+                bench("findAll", params(rows, "storage", "compressed"), compressed::findAll);
+                CompressionStats stats = compressed.getCompressionStats();
+                System.out.printf("сжатие: %.2f (%d -> %d байт, %d блоков), распаковка блока %.1f мкс%n",
+                        stats.getRatio(), stats.getRawBytes(), stats.getStoredBytes(),
+                        stats.getBlocks(), stats.getAverageDecodeMicros());
+            }
+        } finally {
+            db.close();
+            deleteTree(dir);
+        }
+    }
+
+    private void load(ProductDao db, int rows) throws IOException {
+        new DatabaseGenerator(new DatabaseGenerator.Options().rows(rows).seed(seed)).generate(db);
+        db.save();
+    }
+
+    private static Map<String, Object> params(int rows, Object... pairs) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("rows", rows);
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            params.put(pairs[i].toString(), pairs[i + 1]);
+        }
+        return params;
+    }
+
+    /* ==================== Замер ==================== */
+
+    private void bench(String name, Map<String, Object> params, Op op) {
+        bench(name, params, null, op);
+    }
+
+    private void bench(String name, Map<String, Object> params, Setup setup, Op op) {
+        if (only != null && !only.contains(name)) {
+            return;
+        }
+        double[] samples = new double[iterations];
+        String error = null;
+        try {
+            for (int i = 0; i < warmup; i++) {
+                iteration(setup, op);
+            }
+            for (int i = 0; i < iterations; i++) {
+                samples[i] = iteration(setup, op);
+            }
+        } catch (Throwable e) {
+            // например, экспорт без poi-ooxml-lite в classpath — остальные замеры продолжаем
+            error = e.toString();
+            samples = new double[0];
+        }
+        Result r = new Result(name, params, samples, error);
+        results.add(r);
+        if (error != null) {
+            System.out.printf("%-14s %-40s ошибка: %s%n", name, params, error);
+        } else {
+            System.out.printf("%-14s %-40s %12.3f ± %.3f мкс/оп%n", name, params, r.mean(), r.scoreError());
+        }
+    }
+
+    /** Одна итерация: операции подряд, пока не выйдет время (минимум одна). Возвращает мкс/оп */
+    private double iteration(Setup setup, Op op) throws Exception {
+        long measured = 0;
+        long ops = 0;
+        long deadline = System.nanoTime() + iterationNanos;
+        do {
+            if (setup != null) {
+                setup.run();
+            }
+            long t = System.nanoTime();
+            op.run();
+            measured += System.nanoTime() - t;
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return measured / 1e3 / ops;
+    }
+
+    /* ==================== Вывод ==================== */
+
+    void writeJson(Path out) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+            w.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                w.println("  {");
+                w.println("    \"benchmark\": " + quote(r.benchmark) + ",");
+                w.println("    \"mode\": \"avgt\",");
+                w.println("    \"warmupIterations\": " + warmup + ",");
+                w.println("    \"measurementIterations\": " + iterations + ",");
+                w.print("    \"params\": {");
+                int k = 0;
+                for (Map.Entry<String, Object> e : r.params.entrySet()) {
+                    w.print((k++ > 0 ? ", " : "") + quote(e.getKey()) + ": " + quote(String.valueOf(e.getValue())));
+                }
+                w.println("},");
+                if (r.error != null) {
+                    w.println("    \"error\": " + quote(r.error));
+                } else {
+                    w.println("    \"primaryMetric\": {");
+                    w.println("      \"score\": " + number(r.mean()) + ",");
+                    w.println("      \"scoreError\": " + number(r.scoreError()) + ",");
+                    w.println("      \"scoreUnit\": \"us/op\",");
+                    StringBuilder raw = new StringBuilder();
+                    for (double s : r.samples) {
+                        raw.append(raw.length() > 0 ? ", " : "").append(number(s));
+                    }
+                    w.println("      \"rawData\": [[" + raw + "]]");
+                    w.println("    }");
+                }
+                w.println(i + 1 < results.size() ? "  }," : "  }");
+            }
+            w.println("]");
+        }
+    }
+
+    private static String number(double v) {
+        return Double.isNaN(v) ? "null" : String.format(Locale.ROOT, "%.3f", v);
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
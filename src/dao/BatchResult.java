@@ -0,0 +1,57 @@
+package dao;
+
+/**
+ * Итог пакетной вставки: что произошло с каждой записью пачки
+ * (в том же порядке, в каком записи были переданы).
+ */
+public class BatchResult {
+
+    public enum Outcome {
+        INSERTED,       // новая запись
+        UPDATED,        // запись с таким ключом заменена (upsertAll)
+        DUPLICATE_KEY   // ключ уже занят — запись пропущена (insertAll)
+    }
+
+    private final Outcome[] outcomes;
+
+    BatchResult(Outcome[] outcomes) {
+        this.outcomes = outcomes;
+    }
+
+    public int size() {
+        return outcomes.length;
+    }
+
+    public Outcome getOutcome(int i) {
+        return outcomes[i];
+    }
+
+    public int getInsertedCount() {
+        return count(Outcome.INSERTED);
+    }
+
+    public int getUpdatedCount() {
+        return count(Outcome.UPDATED);
+    }
+
+    public int getDuplicateCount() {
+        return count(Outcome.DUPLICATE_KEY);
+    }
+
+    private int count(Outcome outcome) {
+        int n = 0;
+        for (Outcome o : outcomes) {
+            if (o == outcome) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{inserted=" + getInsertedCount()
+                + ", updated=" + getUpdatedCount()
+                + ", duplicates=" + getDuplicateCount() + "}";
+    }
+}
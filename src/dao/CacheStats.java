@@ -0,0 +1,52 @@
+package dao;
+
+/** Снимок счётчиков кэша записей ProductDao */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final long bytes;
+
+    CacheStats(long hits, long misses, long evictions, int size, long bytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /** Сколько записей сейчас в кэше */
+    public int getSize() {
+        return size;
+    }
+
+    /** Примерный объём кэша в байтах */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", size=" + size + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,320 @@
+package dao;
+
+import model.Product;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+
+/**
+ * Колоночная копия числовых полей живых записей: по примитивному массиву
+ * на product_id, seller_id, price, article, stock_quantity и смещение записи в .dat.
+ * Условия и агрегаты только по числовым полям считаются циклом по массивам,
+ * без чтения .dat и разбора записей; с диска читаются лишь подошедшие записи.
+ *
+ * Строка i всех массивов — одна запись, строки идут в порядке записей в .dat
+ * (новые записи всегда дописываются в конец файла). Удалённая запись только
+ * помечается в dead; помеченные строки выбрасываются, когда их становится
+ * больше половины, и при сохранении. Снимок лежит в файле .col рядом с индексом.
+ *
+ * Вызывать под блокировкой ProductDao.
+ */
+final class ColumnStore {
+
+    private static final int MAGIC = 0x434F4C53; // "COLS"
+    private static final int VERSION = 1;
+    private static final int IO_BUFFER = 1 << 16;
+
+    /** Числовые поля, у которых есть колонка */
+    static final Set<String> FIELDS = Set.of("product_id", "seller_id", "price", "article", "stock_quantity");
+
+    private long[] offsets = new long[1024];
+    private int[] ids = new int[1024];
+    private int[] sellers = new int[1024];
+    private double[] prices = new double[1024];
+    private int[] articles = new int[1024];
+    private int[] stocks = new int[1024];
+    private int rows;       // вместе с удалёнными
+    private final BitSet dead = new BitSet();
+    private int deadRows;
+
+    /** Запись, дописанная в конец .dat */
+    void add(Product p, long offset) {
+        if (rows > 0 && offset <= offsets[rows - 1]) {
+            throw new IllegalStateException("Column rows must follow file order: " + offset);
+        }
+        if (rows == offsets.length) {
+            grow(rows * 2);
+        }
+        offsets[rows] = offset;
+        ids[rows] = p.getProduct_id();
+        sellers[rows] = p.getSeller_id();
+        prices[rows] = p.getPrice();
+        articles[rows] = p.getArticle();
+        stocks[rows] = p.getStock_quantity();
+        rows++;
+    }
+
+    void remove(long offset) {
+        int row = Arrays.binarySearch(offsets, 0, rows, offset);
+        if (row < 0 || dead.get(row)) {
+            return;
+        }
+        dead.set(row);
+        deadRows++;
+        if (deadRows > rows / 2) {
+            dropDeadRows();
+        }
+    }
+
+    void clear() {
+        rows = 0;
+        dead.clear();
+        deadRows = 0;
+    }
+
+    int size() {
+        return rows - deadRows;
+    }
+
+    /** Переводит смещения на новые после уплотнения .dat (порядок записей в нём сохраняется) */
+    void remapOffsets(OffsetRemap remap) {
+        dropDeadRows();
+        for (int i = 0; i < rows; i++) {
+            offsets[i] = remap.map(offsets[i]);
+        }
+    }
+
+    private void dropDeadRows() {
+        if (deadRows == 0) {
+            return;
+        }
+        int n = 0;
+        for (int i = 0; i < rows; i++) {
+            if (!dead.get(i)) {
+                offsets[n] = offsets[i];
+                ids[n] = ids[i];
+                sellers[n] = sellers[i];
+                prices[n] = prices[i];
+                articles[n] = articles[i];
+                stocks[n] = stocks[i];
+                n++;
+            }
+        }
+        rows = n;
+        dead.clear();
+        deadRows = 0;
+    }
+
+    private void grow(int capacity) {
+        offsets = Arrays.copyOf(offsets, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        sellers = Arrays.copyOf(sellers, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        articles = Arrays.copyOf(articles, capacity);
+        stocks = Arrays.copyOf(stocks, capacity);
+    }
+
+    private int[] intColumn(String field) {
+        switch (field) {
+            case "product_id":
+                return ids;
+            case "seller_id":
+                return sellers;
+            case "article":
+                return articles;
+            case "stock_quantity":
+                return stocks;
+            default:
+                throw new IllegalArgumentException("No int column: " + field);
+        }
+    }
+
+    /* ==================== Условия ==================== */
+
+    /**
+     * Условие query как проверка строки по колонкам;
+     * null — в условии есть строковые поля, колонок для него мало.
+     */
+    IntPredicate compile(Query query) {
+        if (query instanceof Query.Condition) {
+            Query.Condition c = (Query.Condition) query;
+            if (!FIELDS.contains(c.field)) {
+                return null;
+            }
+            if ("price".equals(c.field)) {
+                DoublePredicate test = c.doubleTest();
+                double[] column = prices;
+                return row -> test.test(column[row]);
+            }
+            IntPredicate test = c.intTest();
+            int[] column = intColumn(c.field);
+            return row -> test.test(column[row]);
+        }
+        Query.Junction junction = (Query.Junction) query;
+        IntPredicate[] parts = new IntPredicate[junction.parts.size()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = compile(junction.parts.get(i));
+            if (parts[i] == null) {
+                return null;
+            }
+        }
+        boolean and = junction.and;
+        return row -> {
+            for (IntPredicate part : parts) {
+                if (part.test(row) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        };
+    }
+
+    /** Смещения живых записей, подошедших под условие, в порядке файла */
+    long[] select(IntPredicate matches) {
+        long[] result = new long[16];
+        int n = 0;
+        for (int i = 0; i < rows; i++) {
+            if (matches.test(i) && !dead.get(i)) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, n * 2);
+                }
+                result[n++] = offsets[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /* ==================== Агрегаты ==================== */
+
+    /** Можно ли посчитать aggregate(groupBy, valueField) только по колонкам */
+    static boolean covers(String groupBy, String valueField) {
+        return FIELDS.contains(groupBy) && FIELDS.contains(valueField);
+    }
+
+    /** count/sum/min/max/avg valueField по группам groupBy для строк, подошедших под where */
+    SortedMap<Object, FieldStats> aggregate(String groupBy, String valueField, IntPredicate where) {
+        Map<Object, FieldStats> groups = new HashMap<>();
+        boolean priceKey = "price".equals(groupBy);
+        int[] intKeys = priceKey ? null : intColumn(groupBy);
+        boolean priceValue = "price".equals(valueField);
+        int[] intValues = priceValue ? null : intColumn(valueField);
+        for (int i = 0; i < rows; i++) {
+            if (dead.get(i) || !where.test(i)) {
+                continue;
+            }
+            Object key = priceKey ? (Object) prices[i] : (Object) intKeys[i];
+            FieldStats stats = groups.get(key);
+            if (stats == null) {
+                stats = new FieldStats();
+                groups.put(key, stats);
+            }
+            stats.add(priceValue ? prices[i] : intValues[i]);
+        }
+        return new TreeMap<>(groups);
+    }
+
+    /* ==================== Сохранение ==================== */
+
+    /**
+     * Снимок колонок: заголовок (длина .dat и число строк — по ним видно,
+     * что снимок устарел), затем каждая колонка подряд.
+     */
+    void write(Path path, long dataLength) throws IOException {
+        dropDeadRows();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(IO_BUFFER);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(dataLength).putInt(rows);
+            for (int i = 0; i < rows; i++) {
+                ensureRoom(ch, buf, Long.BYTES).putLong(offsets[i]);
+            }
+            for (int[] column : new int[][]{ids, sellers, articles, stocks}) {
+                for (int i = 0; i < rows; i++) {
+                    ensureRoom(ch, buf, Integer.BYTES).putInt(column[i]);
+                }
+            }
+            for (int i = 0; i < rows; i++) {
+                ensureRoom(ch, buf, Double.BYTES).putDouble(prices[i]);
+            }
+            flush(ch, buf);
+        }
+    }
+
+    /**
+     * Читает снимок; false — файла нет, он битый или снят не с этого .dat
+     * (тогда колонки пусты и их надо строить сканом).
+     */
+    boolean read(Path path, long dataLength, int liveCount) throws IOException {
+        clear();
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(IO_BUFFER);
+            buf.limit(0);
+            if (fill(ch, buf, 20).getInt() != MAGIC || buf.getInt() != VERSION
+                    || buf.getLong() != dataLength) {
+                return false;
+            }
+            int count = buf.getInt();
+            if (count != liveCount) {
+                return false;
+            }
+            grow(Math.max(count, 1024));
+            for (int i = 0; i < count; i++) {
+                offsets[i] = fill(ch, buf, Long.BYTES).getLong();
+            }
+            for (int[] column : new int[][]{ids, sellers, articles, stocks}) {
+                for (int i = 0; i < count; i++) {
+                    column[i] = fill(ch, buf, Integer.BYTES).getInt();
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                prices[i] = fill(ch, buf, Double.BYTES).getDouble();
+            }
+            rows = count;
+            return true;
+        } catch (IOException e) {
+            clear(); // битый файл — пересоберём
+            return false;
+        }
+    }
+
+    private static ByteBuffer ensureRoom(FileChannel ch, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() < bytes) {
+            flush(ch, buf);
+        }
+        return buf;
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** Дочитывает в буфер, чтобы в нём было не меньше bytes байт */
+    private static ByteBuffer fill(FileChannel ch, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() >= bytes) {
+            return buf;
+        }
+        buf.compact();
+        while (buf.position() < bytes) {
+            if (ch.read(buf) < 0) {
+                throw new EOFException("Column file is truncated");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
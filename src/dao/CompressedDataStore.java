@@ -0,0 +1,579 @@
+package dao;
+
+import model.Product;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * .dat, в котором записи сжаты блоками (StorageMode.COMPRESSED).
+ *
+ * За заголовком файла идут блоки: [вид 1][длина без сжатия 4][длина на диске 4],
+ * у закрытого блока дальше битовая карта удалённых записей и данные (Deflate
+ * или как есть, если сжатие не помогло). Блок — целые записи, примерно BLOCK_SIZE
+ * байт. Последний блок — открытый хвост: записи в нём не сжаты, вставка
+ * дописывает их в конец файла, а набравшийся хвост сжимается на месте.
+ * Сжатые блоки не пишутся поверх хвоста напрямую: сначала копия в конец
+ * файла и метка в заголовке хвоста (commitTail), так что после сбоя
+ * открытие видит либо старый хвост, либо доделывает перенос.
+ *
+ * Смещение записи — её позиция в несжатом файле, поэтому индексы, куски
+ * параллельного скана и снимки колонок те же, что в других режимах.
+ * Каталог блоков (смещение, позиция в файле, длины) строится при открытии,
+ * по нему readAt распаковывает один блок; недавние блоки держатся в кэше.
+ *
+ * Флаг deleted в сжатых данных не меняется: удаление ставит бит в карте блока
+ * (бит = смещение в блоке / RECORD_HEADER_SIZE — записи не короче заголовка).
+ * Распакованный блок отдаётся уже с флагами из карты, так что фильтры
+ * скана работают с ним как с обычным файлом.
+ *
+ * Вставка переписывает хвост, поэтому каталог и хвост меняются под монитором
+ * экземпляра: читать можно параллельно с записью, но только через этот экземпляр.
+ */
+class CompressedDataStore extends DataStore {
+
+    /**
+     * Сколько несжатых байт набирается в блок. Меньше блок — быстрее чтение
+     * по ключу (распаковка 16 КБ — десятки мкс), больше — лучше сжатие
+     */
+    static final int BLOCK_SIZE = 16 << 10;
+
+    private static final byte BLOCK_TAIL = 0;
+    private static final byte BLOCK_STORED = 1;
+    private static final byte BLOCK_DEFLATE = 2;
+    /** Хвост, на место которого переносятся новые блоки (см. commitTail) */
+    private static final byte BLOCK_SEALING = 3;
+    private static final int BLOCK_HEADER_SIZE = 9;
+    private static final int CACHED_BLOCKS = 64;
+    /* за копией переносимых блоков в конце файла: [длина 8][magic 4] */
+    private static final int TRAILER_SIZE = 12;
+    private static final int TRAILER_MAGIC = 0x5345414C; // "SEAL"
+
+    /* каталог закрытых блоков; массивы только дописываются */
+    private long[] starts = new long[64];     // смещение первой записи блока
+    private long[] positions = new long[64];  // позиция заголовка блока в файле
+    private int[] rawLengths = new int[64];
+    private int[] storedLengths = new int[64];
+    private byte[] kinds = new byte[64];
+    private byte[][] bitmaps = new byte[64][];
+    private int blocks;
+
+    /* открытый хвост: его байты лежат и в памяти */
+    private long tailStart = HEADER_SIZE;
+    private long tailPosition = HEADER_SIZE;
+    private byte[] tail = new byte[4 * BLOCK_SIZE];
+    private int tailLength;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    // распакованные блоки по номеру, в порядке обращения
+    private final Map<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+    private final AtomicLong blocksDecoded = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    CompressedDataStore(RandomAccessFile file, StringDictionary dictionary) throws IOException {
+        super(file, dictionary);
+        loadDirectory();
+    }
+
+    @Override
+    protected int layout() {
+        return LAYOUT_BLOCKS;
+    }
+
+    /**
+     * Проходит по заголовкам блоков и читает хвост в память. Прерванный сбоем
+     * перенос блоков доделывается, а байты за хвостом (недописанная вставка
+     * или копия переноса) отрезаются.
+     */
+    private void loadDirectory() throws IOException {
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        long start = HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        while (position < size) {
+            if (size - position < BLOCK_HEADER_SIZE) {
+                throw new StreamCorruptedException("Corrupted data block at " + position);
+            }
+            readFully(header.clear(), position);
+            byte kind = header.get(0);
+            if (kind == BLOCK_SEALING) {
+                finishSealing(position);
+                size = channel.size();
+                continue; // на этом месте теперь перенесённые блоки
+            }
+            int raw = header.getInt(1);
+            int stored = header.getInt(5);
+            long blockEnd = position + BLOCK_HEADER_SIZE + (kind == BLOCK_TAIL ? 0 : bitmapLength(raw)) + stored;
+            if (kind < BLOCK_TAIL || kind > BLOCK_DEFLATE || raw < 0 || stored < 0 || blockEnd > size
+                    || (kind == BLOCK_TAIL && raw != stored)) {
+                throw new StreamCorruptedException("Corrupted data block at " + position);
+            }
+            if (kind == BLOCK_TAIL) {
+                if (blockEnd < size) {
+                    channel.truncate(blockEnd);
+                }
+                tail = new byte[Math.max(4 * BLOCK_SIZE, raw)];
+                readFully(ByteBuffer.wrap(tail, 0, raw), position + BLOCK_HEADER_SIZE);
+                tailLength = raw;
+                break;
+            }
+            byte[] bitmap = new byte[bitmapLength(raw)];
+            readFully(ByteBuffer.wrap(bitmap), position + BLOCK_HEADER_SIZE);
+            addBlock(start, position, raw, stored, kind, bitmap);
+            start += raw;
+            position = blockEnd;
+        }
+        tailStart = start;
+        tailPosition = position;
+    }
+
+    private void addBlock(long start, long position, int raw, int stored, byte kind, byte[] bitmap) {
+        if (blocks == starts.length) {
+            int capacity = blocks * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            rawLengths = Arrays.copyOf(rawLengths, capacity);
+            storedLengths = Arrays.copyOf(storedLengths, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+        }
+        starts[blocks] = start;
+        positions[blocks] = position;
+        rawLengths[blocks] = raw;
+        storedLengths[blocks] = stored;
+        kinds[blocks] = kind;
+        bitmaps[blocks] = bitmap;
+        blocks++;
+    }
+
+    private static int bitmapLength(int rawLength) {
+        return (rawLength / RECORD_HEADER_SIZE + 8) / 8;
+    }
+
+    /** Номер закрытого блока, в котором лежит смещение (смещение меньше tailStart) */
+    private int blockOf(long offset) throws EOFException {
+        int i = Arrays.binarySearch(starts, 0, blocks, offset);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        if (i < 0) {
+            throw new EOFException("No record at offset " + offset);
+        }
+        return i;
+    }
+
+    /* ==================== Запись ==================== */
+
+    @Override
+    synchronized long length() {
+        return tailStart + tailLength;
+    }
+
+    /**
+     * Дописывает записи в хвост. Пока хвост меньше блока, в файл уходят новые
+     * байты, а затем длины в заголовке хвоста — до этого записи не видны.
+     * Набравшиеся блоки сжимаются и встают на место хвоста через commitTail.
+     */
+    @Override
+    protected synchronized int writeRecords(ByteArrayOutputStream bytes, long position) throws IOException {
+        if (position != tailStart + tailLength) {
+            throw new IllegalStateException("Records must be appended at the end: " + position);
+        }
+        byte[] data = bytes.toByteArray();
+        bytes.reset();
+        if (data.length == 0) {
+            return 0;
+        }
+        if (tailLength + data.length > tail.length) {
+            tail = Arrays.copyOf(tail, Math.max(tail.length * 2, tailLength + data.length));
+        }
+        System.arraycopy(data, 0, tail, tailLength, data.length);
+        int committed = tailLength; // столько байт хвоста уже в файле
+        tailLength += data.length;
+        if (tailLength >= BLOCK_SIZE) {
+            sealFullBlocks();
+        } else {
+            writeFully(ByteBuffer.wrap(tail, committed, data.length),
+                    tailPosition + BLOCK_HEADER_SIZE + committed);
+            writeFully(tailHeader(tailLength), tailPosition);
+        }
+        return data.length;
+    }
+
+    private static ByteBuffer tailHeader(int length) {
+        return ByteBuffer.allocate(BLOCK_HEADER_SIZE).put(BLOCK_TAIL).putInt(length).putInt(length).flip();
+    }
+
+    /**
+     * Сжимает из начала хвоста блоки по BLOCK_SIZE (по границам записей)
+     * и записывает их вместе с остатком хвоста на место старого хвоста
+     */
+    private void sealFullBlocks() throws IOException {
+        ByteBuffer records = ByteBuffer.wrap(tail, 0, tailLength);
+        ByteArrayOutputStream content = new ByteArrayOutputStream(tailLength / 2 + BLOCK_HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(content);
+        List<SealedBlock> sealed = new ArrayList<>();
+        long start = tailStart;
+        int from = 0;
+        while (tailLength - from >= BLOCK_SIZE) {
+            int to = from;
+            while (to - from < BLOCK_SIZE) {
+                to += recordLengthAt(records, to);
+            }
+            int raw = to - from;
+            byte[] bitmap = new byte[bitmapLength(raw)];
+            for (int at = from; at < to; at += recordLengthAt(records, at)) {
+                if (tail[at] != 0) {
+                    int bit = (at - from) / RECORD_HEADER_SIZE;
+                    bitmap[bit >> 3] |= 1 << (bit & 7);
+                }
+            }
+            byte[] compressed = deflate(from, raw);
+            byte kind = compressed != null ? BLOCK_DEFLATE : BLOCK_STORED;
+            int stored = compressed != null ? compressed.length : raw;
+
+            sealed.add(new SealedBlock(start, tailPosition + content.size(), raw, stored, kind, bitmap));
+            out.writeByte(kind);
+            out.writeInt(raw);
+            out.writeInt(stored);
+            out.write(bitmap);
+            if (compressed != null) {
+                out.write(compressed);
+            } else {
+                out.write(tail, from, raw);
+            }
+            start += raw;
+            from = to;
+        }
+        int rest = tailLength - from;
+        long restPosition = tailPosition + content.size();
+        out.write(tailHeader(rest).array());
+        out.write(tail, from, rest);
+        commitTail(content.toByteArray());
+
+        for (SealedBlock b : sealed) {
+            addBlock(b.start, b.position, b.raw, b.stored, b.kind, b.bitmap);
+        }
+        tailStart = start;
+        tailPosition = restPosition;
+        System.arraycopy(tail, from, tail, 0, rest);
+        tailLength = rest;
+    }
+
+    /** Закрытый блок, который попадёт в каталог после commitTail */
+    private static final class SealedBlock {
+        final long start;
+        final long position;
+        final int raw;
+        final int stored;
+        final byte kind;
+        final byte[] bitmap;
+
+        SealedBlock(long start, long position, int raw, int stored, byte kind, byte[] bitmap) {
+            this.start = start;
+            this.position = position;
+            this.raw = raw;
+            this.stored = stored;
+            this.kind = kind;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * Ставит content (закрытые блоки и новый хвост) на место хвоста так, чтобы сбой
+     * в любой момент не потерял записи, уже лежащие в хвосте:
+     * 1) content и его длина пишутся копией в конец файла, за хвост, — force;
+     * 2) вид блока на месте хвоста меняется на BLOCK_SEALING (один байт) — force:
+     *    с этого момента при открытии перенос доделывается по копии (finishSealing);
+     * 3) content переносится на место хвоста, первый байт (снимающий метку) — последним.
+     * До шага 2 файл открывается со старым хвостом, а копия за ним отрезается.
+     */
+    private void commitTail(byte[] content) throws IOException {
+        // копия не должна перекрываться с местом, куда её переносят
+        long copy = Math.max(channel.size(), tailPosition + content.length);
+        writeFully(ByteBuffer.wrap(content), copy);
+        writeFully(ByteBuffer.allocate(TRAILER_SIZE).putLong(content.length).putInt(TRAILER_MAGIC).flip(),
+                copy + content.length);
+        channel.force(true);
+        writeFully(ByteBuffer.wrap(new byte[]{BLOCK_SEALING}), tailPosition);
+        channel.force(false);
+        moveInPlace(content, tailPosition);
+    }
+
+    private void moveInPlace(byte[] content, long position) throws IOException {
+        writeFully(ByteBuffer.wrap(content, 1, content.length - 1), position + 1);
+        channel.force(false);
+        writeFully(ByteBuffer.wrap(content, 0, 1), position);
+        channel.force(false);
+        channel.truncate(position + content.length);
+    }
+
+    /** Доделывает перенос, прерванный сбоем: блок с меткой в position, копия — в конце файла */
+    private void finishSealing(long position) throws IOException {
+        long size = channel.size();
+        if (size - position < 1 + TRAILER_SIZE) {
+            throw new StreamCorruptedException("Corrupted sealing copy at " + position);
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        readFully(trailer, size - TRAILER_SIZE);
+        long length = trailer.getLong(0);
+        long copy = size - TRAILER_SIZE - length;
+        if (trailer.getInt(8) != TRAILER_MAGIC || length <= BLOCK_HEADER_SIZE || copy < position + length) {
+            throw new StreamCorruptedException("Corrupted sealing copy at " + position);
+        }
+        byte[] content = new byte[(int) length];
+        readFully(ByteBuffer.wrap(content), copy);
+        moveInPlace(content, position);
+    }
+
+    /** Сжатые байты или null, если сжатие не уменьшило блок */
+    private byte[] deflate(int from, int length) {
+        deflater.reset();
+        deflater.setInput(tail, from, length);
+        deflater.finish();
+        byte[] out = new byte[length];
+        int n = 0;
+        while (!deflater.finished() && n < out.length) {
+            n += deflater.deflate(out, n, out.length - n);
+        }
+        return deflater.finished() && n < length ? Arrays.copyOf(out, n) : null;
+    }
+
+    @Override
+    synchronized void markDeleted(long offset) throws IOException {
+        if (offset >= tailStart) {
+            int at = (int) (offset - tailStart);
+            if (at >= tailLength) {
+                throw new EOFException("No record at offset " + offset);
+            }
+            tail[at] = 1;
+            writeFully(ByteBuffer.wrap(tail, at, 1), tailPosition + BLOCK_HEADER_SIZE + at);
+            return;
+        }
+        int i = blockOf(offset);
+        int at = (int) (offset - starts[i]);
+        int bit = at / RECORD_HEADER_SIZE;
+        byte[] bitmap = bitmaps[i];
+        bitmap[bit >> 3] |= 1 << (bit & 7);
+        writeFully(ByteBuffer.wrap(bitmap, bit >> 3, 1), positions[i] + BLOCK_HEADER_SIZE + (bit >> 3));
+        byte[] cached = cache.get(i);
+        if (cached != null) {
+            cached[at] = 1;
+        }
+    }
+
+    @Override
+    protected synchronized void onTruncate() {
+        blocks = 0;
+        tailStart = HEADER_SIZE;
+        tailPosition = HEADER_SIZE;
+        tailLength = 0;
+        cache.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        deflater.end();
+    }
+
+    @Override
+    synchronized CompressionStats compressionStats() throws IOException {
+        return new CompressionStats(length() - HEADER_SIZE, channel.size() - HEADER_SIZE,
+                blocks + (tailLength > 0 ? 1 : 0), blocksDecoded.get(), decodeNanos.get());
+    }
+
+    /* ==================== Чтение ==================== */
+
+    @Override
+    Product readAt(long offset) throws IOException {
+        ByteBuffer buf;
+        int pos;
+        int block;
+        synchronized (this) {
+            if (offset >= tailStart) {
+                // хвост может переписать вставка — копируем запись под монитором
+                ByteBuffer records = ByteBuffer.wrap(tail, 0, tailLength);
+                int at = (int) (offset - tailStart);
+                int end = recordEnd(records, at);
+                if (end < 0) {
+                    throw new EOFException("Truncated record at offset " + offset);
+                }
+                buf = ByteBuffer.wrap(Arrays.copyOfRange(tail, at, end));
+                pos = 0;
+                block = -1;
+            } else {
+                block = blockOf(offset);
+                buf = null;
+                pos = (int) (offset - starts[block]);
+            }
+        }
+        if (block >= 0) {
+            buf = ByteBuffer.wrap(blockData(block, true));
+            if (recordEnd(buf, pos) < 0) {
+                throw new EOFException("Truncated record at offset " + offset);
+            }
+        }
+        if (buf.get(pos) != 0) {
+            return null; // deleted
+        }
+        Product p = new Product();
+        decode(buf, pos, p, dictionary);
+        return p;
+    }
+
+    @Override
+    long scan(long from, long to, RecordFilter filter, RecordVisitor visitor) throws IOException {
+        long offset = from;
+        while (offset < to) {
+            ByteBuffer buf;
+            long start;
+            int block;
+            synchronized (this) {
+                if (offset >= tailStart) {
+                    if (offset >= tailStart + tailLength) {
+                        throw new EOFException("Truncated record at offset " + offset);
+                    }
+                    buf = ByteBuffer.wrap(Arrays.copyOf(tail, tailLength));
+                    start = tailStart;
+                    block = -1;
+                } else {
+                    block = blockOf(offset);
+                    buf = null;
+                    start = starts[block];
+                }
+            }
+            if (block >= 0) {
+                // скан не кладёт блоки в кэш, чтобы не вытеснить нужные точечным чтениям
+                buf = ByteBuffer.wrap(blockData(block, false));
+            }
+            int pos = (int) (offset - start);
+            while (pos < buf.limit() && offset < to) {
+                int end = recordEnd(buf, pos);
+                if (end < 0) {
+                    throw new EOFException("Truncated record at offset " + offset);
+                }
+                if (filter.test(buf, pos)) {
+                    Product p = new Product();
+                    decode(buf, pos, p, dictionary);
+                    visitor.visit(offset, buf.get(pos) != 0, p);
+                }
+                offset += end - pos;
+                pos = end;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Распакованный закрытый блок с флагами deleted из битовой карты.
+     * Распаковка идёт вне монитора, чтобы параллельные сканы не ждали друг друга.
+     */
+    private byte[] blockData(int block, boolean keep) throws IOException {
+        long position;
+        int raw;
+        int stored;
+        byte kind;
+        int bitmapLength;
+        synchronized (this) {
+            if (block >= blocks) {
+                throw new EOFException("No data block " + block); // файл очистили
+            }
+            byte[] cached = cache.get(block);
+            if (cached != null) {
+                return cached;
+            }
+            position = positions[block];
+            raw = rawLengths[block];
+            stored = storedLengths[block];
+            kind = kinds[block];
+            bitmapLength = bitmaps[block].length;
+        }
+        long started = System.nanoTime();
+        byte[] data = new byte[raw];
+        long dataPosition = position + BLOCK_HEADER_SIZE + bitmapLength;
+        if (kind == BLOCK_STORED) {
+            readFully(ByteBuffer.wrap(data), dataPosition);
+        } else {
+            byte[] compressed = new byte[stored];
+            readFully(ByteBuffer.wrap(compressed), dataPosition);
+            inflate(compressed, data, position);
+        }
+        blocksDecoded.incrementAndGet();
+        decodeNanos.addAndGet(System.nanoTime() - started);
+
+        synchronized (this) {
+            // карту читаем под монитором: удаление меняет её вместе с кэшем
+            byte[] bitmap = bitmaps[block];
+            ByteBuffer records = ByteBuffer.wrap(data);
+            for (int at = 0; at < raw; at += recordLengthAt(records, at)) {
+                int bit = at / RECORD_HEADER_SIZE;
+                if ((bitmap[bit >> 3] & (1 << (bit & 7))) != 0) {
+                    data[at] = 1;
+                }
+            }
+            if (keep) {
+                cache.put(block, data);
+            }
+        }
+        return data;
+    }
+
+    private static void inflate(byte[] compressed, byte[] data, long position) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < data.length && !inflater.finished()) {
+                int read = inflater.inflate(data, n, data.length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != data.length || !inflater.finished()) {
+                throw new StreamCorruptedException("Corrupted data block at " + position);
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupted data block at " + position + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        long at = position - buf.position();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, at + buf.position()) < 0) {
+                throw new EOFException("Data file is truncated at " + (at + buf.position()));
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        long at = position - buf.position();
+        while (buf.hasRemaining()) {
+            channel.write(buf, at + buf.position());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dao;
+
+/** Снимок счётчиков сжатия файла .dat (StorageMode.COMPRESSED) */
+public class CompressionStats {
+
+    private final long rawBytes;
+    private final long storedBytes;
+    private final int blocks;
+    private final long blocksDecoded;
+    private final long decodeNanos;
+
+    CompressionStats(long rawBytes, long storedBytes, int blocks, long blocksDecoded, long decodeNanos) {
+        this.rawBytes = rawBytes;
+        this.storedBytes = storedBytes;
+        this.blocks = blocks;
+        this.blocksDecoded = blocksDecoded;
+        this.decodeNanos = decodeNanos;
+    }
+
+    /** Сколько байт занимали бы записи без сжатия */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /** Сколько байт записи занимают на диске (с заголовками блоков) */
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /** Во сколько раз записи сжаты; 1 — файл не сжат */
+    public double getRatio() {
+        return storedBytes == 0 ? 1 : (double) rawBytes / storedBytes;
+    }
+
+    /** Число блоков в файле (0 — файл не сжат) */
+    public int getBlocks() {
+        return blocks;
+    }
+
+    /** Сколько раз блок распаковывался с диска (без попаданий в кэш блоков) */
+    public long getBlocksDecoded() {
+        return blocksDecoded;
+    }
+
+    /** Суммарное время распаковки блоков, нс */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /** Среднее время распаковки одного блока, мкс */
+    public double getAverageDecodeMicros() {
+        return blocksDecoded == 0 ? 0 : decodeNanos / 1000.0 / blocksDecoded;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{raw=" + rawBytes + ", stored=" + storedBytes
+                + ", ratio=" + getRatio() + ", blocks=" + blocks
+                + ", decoded=" + blocksDecoded + ", decodeNanos=" + decodeNanos + "}";
+    }
+}
@@ -0,0 +1,109 @@
+package dao;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый разбор CSV (RFC 4180): кавычки, "" внутри кавычек, переводы строк
+ * внутри значения. Разделитель (',', ';' или табуляция) определяется по первой строке —
+ * русский Excel сохраняет CSV через ';'. Файл читается в UTF-8, BOM пропускается.
+ */
+class CsvRowReader {
+
+    private static final int DETECT_LIMIT = 1 << 16;
+
+    static void read(Path file, RowHandler handler) throws IOException {
+        try (Reader in = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            in.mark(1);
+            if (in.read() != '\uFEFF') {
+                in.reset();
+            }
+            char separator = detectSeparator(in);
+            handler.startSheet(null);
+
+            List<String> row = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean rowStarted = false;
+            int rowNumber = 0;
+            int c;
+            while ((c = in.read()) != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        if (in.read() == '"') {
+                            field.append('"'); // "" внутри кавычек
+                        } else {
+                            in.reset();
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                    rowStarted = true;
+                } else if (c == separator) {
+                    row.add(field.toString());
+                    field.setLength(0);
+                    rowStarted = true;
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        in.mark(1);
+                        if (in.read() != '\n') {
+                            in.reset();
+                        }
+                    }
+                    rowNumber++;
+                    if (rowStarted || field.length() > 0) { // пустые строки пропускаем
+                        row.add(field.toString());
+                        handler.row(rowNumber, row);
+                        row = new ArrayList<>();
+                    }
+                    field.setLength(0);
+                    rowStarted = false;
+                } else {
+                    field.append((char) c);
+                }
+            }
+            if (rowStarted || field.length() > 0) {
+                row.add(field.toString());
+                handler.row(rowNumber + 1, row);
+            }
+        }
+    }
+
+    /** Разделитель, которого в первой строке (вне кавычек) больше всего */
+    private static char detectSeparator(Reader in) throws IOException {
+        in.mark(DETECT_LIMIT);
+        int commas = 0;
+        int semicolons = 0;
+        int tabs = 0;
+        boolean quoted = false;
+        for (int i = 0; i < DETECT_LIMIT; i++) {
+            int c = in.read();
+            if (c == -1 || (!quoted && (c == '\n' || c == '\r'))) {
+                break;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && c == ',') {
+                commas++;
+            } else if (!quoted && c == ';') {
+                semicolons++;
+            } else if (!quoted && c == '\t') {
+                tabs++;
+            }
+        }
+        in.reset();
+        if (semicolons > commas && semicolons >= tabs) {
+            return ';';
+        }
+        return tabs > commas ? '\t' : ',';
+    }
+}
@@ -0,0 +1,63 @@
+package dao;
+
+/**
+ * Изменение в БД: вставка, обновление или удаление одной записи
+ * либо RELOADED — данные сменились целиком (create, open, clear, restore, close)
+ * и их надо перечитать.
+ */
+public class DataChangeEvent<T, K> {
+
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED,
+        RELOADED
+    }
+
+    private final Type type;
+    private final K key;
+    private final T record;
+    private final int row;
+    private final int recordCount;
+
+    DataChangeEvent(Type type, K key, T record, int row, int recordCount) {
+        this.type = type;
+        this.key = key;
+        this.record = record;
+        this.row = row;
+        this.recordCount = recordCount;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Ключ записи (null для RELOADED) */
+    public K getKey() {
+        return key;
+    }
+
+    /** Новая версия записи для INSERTED/UPDATED, иначе null */
+    public T getRecord() {
+        return record;
+    }
+
+    /**
+     * Позиция записи среди ключей по возрастанию, как у строк findPage:
+     * для INSERTED — куда вставлена, для DELETED — где была.
+     * -1, если позиция неизвестна (порядок ключей ещё не собирался).
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /** Число живых записей сразу после этого изменения */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public String toString() {
+        return "DataChangeEvent{" + type + ", key=" + key + ", row=" + row + "}";
+    }
+}
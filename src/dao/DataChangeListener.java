@@ -0,0 +1,13 @@
+package dao;
+
+/**
+ * Получатель событий об изменениях в БД.
+ * Вызывается в потоке, который менял данные, под блокировкой записи —
+ * поэтому события приходят строго в порядке изменений. Обработчик должен
+ * быть коротким (например, переложить событие в очередь) и не менять БД.
+ */
+@FunctionalInterface
+public interface DataChangeListener<T, K> {
+
+    void dataChanged(DataChangeEvent<T, K> event);
+}
@@ -0,0 +1,733 @@
+package dao;
+
+import model.Product;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Файл данных .dat: заголовок [magic][версия][раскладка][резерв][словарь строк]
+ * и последовательность записей.
+ * Формат записи общий для всех режимов, чтение реализуют наследники.
+ * Раскладка LAYOUT_PLAIN — записи лежат подряд, смещение записи — её позиция
+ * в файле; LAYOUT_BLOCKS — записи сжаты блоками (CompressedDataStore),
+ * смещение — позиция, которую запись заняла бы в несжатом файле.
+ *
+ * Формат записи (версия 3):
+ * [deleted 1][длина записи 4][id 4][seller_id 4][price 8][article 4][stock 4]
+ * [концы строк name, brand, category, description — 4 x 4][коды brand, category — 2 x 2]
+ * [байты строк в UTF-8]
+ * Длина в начале позволяет перешагнуть запись не разбирая её, а таблица концов
+ * строк — сравнить одно поле с образцом прямо в байтах (см. RecordFilter).
+ * brand и category, если их значение есть в словаре файла (StringDictionary),
+ * хранятся только кодом, а их строка в записи пуста.
+ *
+ * Чтение не трогает указатель файла (позиционное чтение канала или
+ * отображение в память), поэтому readAt/scan можно вызывать из нескольких
+ * потоков одновременно. Запись (append, markDeleted, truncate) —
+ * только под эксклюзивной блокировкой вызывающего кода.
+ * Прерывание (interrupt) читающего потока закрывает FileChannel
+ * для всех, поэтому операции с БД нельзя отменять через interrupt.
+ */
+abstract class DataStore implements Closeable {
+
+    // первый байт старого формата — флаг deleted (0 или 1), так что спутать нельзя
+    static final int FILE_MAGIC = 0x50524F44; // "PROD"
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_SIZE = 8 << 10;   // magic, версия, раскладка, резерв, словарь строк
+    static final int DICTIONARY_SIZE = HEADER_SIZE - StringDictionary.DICTIONARY_POS;
+    private static final int LAYOUT_POS = 8;
+    static final int LAYOUT_PLAIN = 0;
+    static final int LAYOUT_BLOCKS = 1;
+
+    /* смещения полей от начала записи */
+    static final int LENGTH_POS = 1;
+    static final int ID_POS = 5;
+    static final int SELLER_POS = 9;
+    static final int PRICE_POS = 13;
+    static final int ARTICLE_POS = 21;
+    static final int STOCK_POS = 25;
+    private static final int STRING_ENDS_POS = 29;
+    private static final int BRAND_CODE_POS = 45;
+    private static final int CATEGORY_CODE_POS = 47;
+    static final int RECORD_HEADER_SIZE = 49; // дальше идут байты строк
+
+    /* номера строковых полей в таблице концов */
+    static final int NAME = 0;
+    static final int BRAND = 1;
+    static final int CATEGORY = 2;
+    static final int DESCRIPTION = 3;
+
+    /** Предел размера одной записи: столько же перекрываются сегменты отображения */
+    static final int MAX_RECORD_SIZE = 16 << 20;
+
+    /** Сколько байт пачки копится в памяти перед записью в файл */
+    static final int APPEND_BUFFER_SIZE = 8 << 20;
+
+    /** Сколько записей за раз переносит смена раскладки */
+    private static final int CONVERT_BATCH = 10_000;
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    protected final RandomAccessFile file;
+    protected final FileChannel channel;
+    protected final StringDictionary dictionary;
+
+    protected DataStore(RandomAccessFile file, StringDictionary dictionary) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Открывает .dat; в пустой файл пишется заголовок.
+     * Файл другой раскладки (открыт в COMPRESSED, а записан несжатым, или наоборот)
+     * переписывается в нужную, смещения записей при этом не меняются.
+     * Файл старого формата нужно сначала преобразовать upgradeLegacyFile().
+     */
+    static DataStore open(Path dataPath, StorageMode mode) throws IOException {
+        int layout = layoutOf(mode);
+        RandomAccessFile file = new RandomAccessFile(dataPath.toFile(), "rw");
+        StringDictionary dictionary;
+        try {
+            if (file.length() == 0) {
+                writeHeader(file, layout);
+                dictionary = new StringDictionary(DICTIONARY_SIZE);
+            } else {
+                int fileLayout = checkHeader(file, dataPath);
+                if (fileLayout != layout) {
+                    file.close();
+                    convertLayout(dataPath, fileLayout, mode);
+                    return open(dataPath, mode);
+                }
+                dictionary = StringDictionary.read(file.getChannel(), DICTIONARY_SIZE);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        switch (mode) {
+            case MEMORY_MAPPED:
+                return new MappedDataStore(file, dictionary);
+            case COMPRESSED:
+                try {
+                    return new CompressedDataStore(file, dictionary);
+                } catch (IOException e) {
+                    file.close();
+                    throw e;
+                }
+            case RANDOM_ACCESS:
+            default:
+                return new RandomAccessDataStore(file, dictionary);
+        }
+    }
+
+    private static int layoutOf(StorageMode mode) {
+        return mode == StorageMode.COMPRESSED ? LAYOUT_BLOCKS : LAYOUT_PLAIN;
+    }
+
+    /** Заголовок несжатого файла с пустым словарём */
+    static void writeHeader(DataOutput out) throws IOException {
+        writeHeader(out, LAYOUT_PLAIN);
+    }
+
+    static void writeHeader(DataOutput out, int layout) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(layout);
+        out.writeInt(0); // резерв
+        out.write(new byte[DICTIONARY_SIZE]);
+    }
+
+    /** Проверяет заголовок и возвращает раскладку файла */
+    private static int checkHeader(RandomAccessFile file, Path dataPath) throws IOException {
+        file.seek(0);
+        if (file.length() < HEADER_SIZE || file.readInt() != FILE_MAGIC) {
+            throw new IOException("Not a data file of format " + FORMAT_VERSION + ": " + dataPath);
+        }
+        int version = file.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported data file version: " + version);
+        }
+        int layout = file.readInt();
+        if (layout != LAYOUT_PLAIN && layout != LAYOUT_BLOCKS) {
+            throw new IOException("Unknown data file layout: " + layout);
+        }
+        return layout;
+    }
+
+    /** Раскладка, в которой этот наследник хранит записи */
+    protected int layout() {
+        return LAYOUT_PLAIN;
+    }
+
+    /* ==================== Запись ==================== */
+
+    /** Дописывает запись в конец файла и возвращает её смещение */
+    long append(Product p) throws IOException {
+        return appendAll(List.of(p))[0];
+    }
+
+    /**
+     * Дописывает записи в конец файла и возвращает их смещения.
+     * Записи сериализуются в память и уходят в файл одной записью канала
+     * (для очень больших пачек — блоками по APPEND_BUFFER_SIZE).
+     */
+    long[] appendAll(List<Product> records) throws IOException {
+        // новые значения brand/category сначала попадают в словарь на диске, потом в записи
+        int known = dictionary.size();
+        for (Product p : records) {
+            dictionary.add(BRAND, p.getBrand());
+            dictionary.add(CATEGORY, p.getCategory());
+        }
+        if (dictionary.size() != known) {
+            dictionary.write(channel);
+        }
+        long[] offsets = new long[records.size()];
+        long position = length(); // пишем в конец файла
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                Math.min(APPEND_BUFFER_SIZE, Math.max(256, records.size() * 128)));
+        DataOutputStream out = new DataOutputStream(bytes);
+        long buffered = position;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buffered + bytes.size();
+            out.writeBoolean(false);    // флаг deleted = false
+            writeProduct(out, records.get(i), dictionary);
+            if (bytes.size() >= APPEND_BUFFER_SIZE) {
+                buffered += writeRecords(bytes, buffered);
+            }
+        }
+        writeRecords(bytes, buffered);
+        if (offsets.length > 0) {
+            onGrow();
+        }
+        return offsets;
+    }
+
+    /**
+     * Пишет накопленные байты целых записей по смещению position (конец файла)
+     * и очищает буфер, возвращает их число
+     */
+    protected int writeRecords(ByteArrayOutputStream bytes, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        int written = buf.remaining();
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+        bytes.reset();
+        return written;
+    }
+
+    void markDeleted(long offset) throws IOException {
+        long currentPos = file.getFilePointer(); // запоминаем, где были
+        file.seek(offset);
+        file.writeBoolean(true);                 // ставим deleted = true
+        file.seek(currentPos);                   // возвращаемся туда, где шёл цикл
+    }
+
+    /** Удаляет все записи, оставляя только заголовок */
+    void truncate() throws IOException {
+        onTruncate();
+        file.setLength(0);
+        file.seek(0);
+        writeHeader(file, layout());
+        dictionary.clear();
+        onGrow();
+    }
+
+    /** Смещение сразу за последней записью */
+    long length() throws IOException {
+        return channel.size();
+    }
+
+    /** Сбрасывает записанное на диск */
+    void sync() throws IOException {
+        channel.force(true);
+    }
+
+    /** Размер данных на диске и затраты на распаковку (для несжатого файла — без сжатия) */
+    CompressionStats compressionStats() throws IOException {
+        long bytes = length() - HEADER_SIZE;
+        return new CompressionStats(bytes, bytes, 0, 0, 0);
+    }
+
+    /** Словарь brand/category этого файла (для фильтров по байтам записи) */
+    StringDictionary dictionary() {
+        return dictionary;
+    }
+
+    /** Размер записи в этом файле вместе с флагом deleted */
+    int recordLength(Product p) {
+        return recordLength(p, dictionary);
+    }
+
+    @Override
+    public void close() throws IOException {
+        onTruncate(); // отпускаем отображения, если они есть
+        file.close();
+    }
+
+    /** Файл вырос после записи */
+    protected void onGrow() {
+    }
+
+    /** Файл будет укорочен или закрыт */
+    protected void onTruncate() {
+    }
+
+    /* ==================== Чтение ==================== */
+
+    /** Запись по смещению или null, если она помечена удалённой */
+    abstract Product readAt(long offset) throws IOException;
+
+    /** Проход по всем записям файла (включая удалённые) от начала до конца */
+    void scan(RecordVisitor visitor) throws IOException {
+        scan(HEADER_SIZE, length(), RecordFilter.ALL, visitor);
+    }
+
+    /** Проход по записям, прошедшим фильтр; остальные не разбираются в Product */
+    void scan(RecordFilter filter, RecordVisitor visitor) throws IOException {
+        scan(HEADER_SIZE, length(), filter, visitor);
+    }
+
+    void scan(long from, long to, RecordVisitor visitor) throws IOException {
+        scan(from, to, RecordFilter.ALL, visitor);
+    }
+
+    /**
+     * Проход по записям, начинающимся в [from, to).
+     * from должен указывать на начало записи.
+     * Возвращает смещение сразу за последней просмотренной записью —
+     * с него можно продолжить проход.
+     */
+    abstract long scan(long from, long to, RecordFilter filter, RecordVisitor visitor)
+            throws IOException;
+
+    /* ==================== Формат записи ==================== */
+
+    /**
+     * Записываем запись Product в файл после флага deleted.
+     * Значения brand/category, которые есть в dict, пишутся кодом.
+     */
+    static void writeProduct(DataOutput file, Product p, StringDictionary dict) throws IOException {
+        int brandCode = dict.code(BRAND, p.getBrand());
+        int categoryCode = dict.code(CATEGORY, p.getCategory());
+        byte[] name = utf8(p.getName());
+        byte[] brand = brandCode != 0 ? NO_BYTES : utf8(p.getBrand());
+        byte[] category = categoryCode != 0 ? NO_BYTES : utf8(p.getCategory());
+        byte[] description = utf8(p.getDescription());
+        long length = (long) RECORD_HEADER_SIZE + name.length + brand.length
+                + category.length + description.length;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("Record " + p.getProduct_id() + " is too large: " + length + " bytes");
+        }
+
+        file.writeInt((int) length);
+        file.writeInt(p.getProduct_id());
+        file.writeInt(p.getSeller_id());
+        file.writeDouble(p.getPrice());
+        file.writeInt(p.getArticle());
+        file.writeInt(p.getStock_quantity());
+
+        int end = RECORD_HEADER_SIZE;
+        for (byte[] field : new byte[][]{name, brand, category, description}) {
+            end += field.length;
+            file.writeInt(end);
+        }
+        file.writeShort(brandCode);
+        file.writeShort(categoryCode);
+        file.write(name);
+        file.write(brand);
+        file.write(category);
+        file.write(description);
+    }
+
+    /**
+     * Конец записи, начинающейся в buf с позиции pos (с флага deleted),
+     * или -1, если запись не помещается в буфер целиком.
+     */
+    static int recordEnd(ByteBuffer buf, int pos) throws IOException {
+        if (pos + RECORD_HEADER_SIZE > buf.limit()) {
+            return -1;
+        }
+        int end = pos + recordLengthAt(buf, pos);
+        return end <= buf.limit() ? end : -1;
+    }
+
+    /** Длина записи из её заголовка (заголовок должен быть в буфере) */
+    static int recordLengthAt(ByteBuffer buf, int pos) throws IOException {
+        int length = buf.getInt(pos + LENGTH_POS);
+        if (length < RECORD_HEADER_SIZE || length > MAX_RECORD_SIZE) {
+            throw new StreamCorruptedException("Corrupted record length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Разбирает запись, начинающуюся в buf с позиции pos, абсолютными get-ами.
+     * Позиция буфера не меняется, так что один буфер могут читать несколько потоков.
+     * Возвращает позицию сразу за записью.
+     */
+    static int decode(ByteBuffer buf, int pos, Product p, StringDictionary dict) {
+        p.setProduct_id(buf.getInt(pos + ID_POS));
+        p.setSeller_id(buf.getInt(pos + SELLER_POS));
+        p.setPrice(buf.getDouble(pos + PRICE_POS));
+        p.setArticle(buf.getInt(pos + ARTICLE_POS));
+        p.setStock_quantity(buf.getInt(pos + STOCK_POS));
+        p.setName(stringAt(buf, pos, NAME, dict));
+        p.setBrand(stringAt(buf, pos, BRAND, dict));
+        p.setCategory(stringAt(buf, pos, CATEGORY, dict));
+        p.setDescription(stringAt(buf, pos, DESCRIPTION, dict));
+        return pos + buf.getInt(pos + LENGTH_POS);
+    }
+
+    /** Номер строкового поля Product в таблице концов строк */
+    static int stringField(String fieldName) {
+        switch (fieldName) {
+            case "name":
+                return NAME;
+            case "brand":
+                return BRAND;
+            case "category":
+                return CATEGORY;
+            case "description":
+                return DESCRIPTION;
+            default:
+                throw new IllegalArgumentException("Not a text field: " + fieldName);
+        }
+    }
+
+    /** Позиция числового поля Product от начала записи */
+    static int numberPosition(String fieldName) {
+        switch (fieldName) {
+            case "product_id":
+                return ID_POS;
+            case "seller_id":
+                return SELLER_POS;
+            case "price":
+                return PRICE_POS;
+            case "article":
+                return ARTICLE_POS;
+            case "stock_quantity":
+                return STOCK_POS;
+            default:
+                throw new IllegalArgumentException("Not a numeric field: " + fieldName);
+        }
+    }
+
+    /** Строковое поле записи из буфера; значение из словаря не копируется */
+    static String stringAt(ByteBuffer buf, int pos, int field, StringDictionary dict) {
+        if (StringDictionary.isCoded(field)) {
+            int code = codeAt(buf, pos, field);
+            if (code != 0) {
+                return dict.value(field, code);
+            }
+        }
+        int start = stringStart(buf, pos, field);
+        byte[] bytes = new byte[stringEnd(buf, pos, field) - start];
+        buf.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Фильтр "строковое поле равно value" по байтам записи (флаг deleted не проверяет).
+     * Для значения из словаря сравнивается только код.
+     */
+    static RecordFilter stringEquals(int field, String value, StringDictionary dict) {
+        byte[] bytes = utf8(value);
+        if (!StringDictionary.isCoded(field)) {
+            return (buf, pos) -> bytesEqual(buf, pos, field, bytes);
+        }
+        int at = codePosition(field);
+        int code = dict.code(field, value);
+        if (code != 0) {
+            short expected = (short) code;
+            return (buf, pos) -> buf.getShort(pos + at) == expected;
+        }
+        // значения в словаре нет: оно в самой записи или попало в словарь уже после создания фильтра
+        return (buf, pos) -> {
+            int c = buf.getShort(pos + at) & 0xFFFF;
+            return c == 0 ? bytesEqual(buf, pos, field, bytes) : dict.value(field, c).equals(value);
+        };
+    }
+
+    /** Фильтр "строковое поле начинается с prefix" (префикс UTF-8 = префикс строки) */
+    static RecordFilter stringStartsWith(int field, String prefix, StringDictionary dict) {
+        byte[] bytes = utf8(prefix);
+        if (!StringDictionary.isCoded(field)) {
+            return (buf, pos) -> bytesStartWith(buf, pos, field, bytes);
+        }
+        int at = codePosition(field);
+        return (buf, pos) -> {
+            int c = buf.getShort(pos + at) & 0xFFFF;
+            return c == 0 ? bytesStartWith(buf, pos, field, bytes) : dict.value(field, c).startsWith(prefix);
+        };
+    }
+
+    /** Совпадает ли строка поля в записи с образцом — без создания String */
+    private static boolean bytesEqual(ByteBuffer buf, int pos, int field, byte[] value) {
+        int start = stringStart(buf, pos, field);
+        int end = stringEnd(buf, pos, field);
+        return end - start == value.length && bytesAt(buf, start, value);
+    }
+
+    private static boolean bytesStartWith(ByteBuffer buf, int pos, int field, byte[] prefix) {
+        int start = stringStart(buf, pos, field);
+        int end = stringEnd(buf, pos, field);
+        return end - start >= prefix.length && bytesAt(buf, start, prefix);
+    }
+
+    private static int codeAt(ByteBuffer buf, int pos, int field) {
+        return buf.getShort(pos + codePosition(field)) & 0xFFFF;
+    }
+
+    private static int codePosition(int field) {
+        return field == BRAND ? BRAND_CODE_POS : CATEGORY_CODE_POS;
+    }
+
+    private static boolean bytesAt(ByteBuffer buf, int start, byte[] value) {
+        for (int i = 0; i < value.length; i++) {
+            if (buf.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int stringStart(ByteBuffer buf, int pos, int field) {
+        return field == 0 ? pos + RECORD_HEADER_SIZE : stringEnd(buf, pos, field - 1);
+    }
+
+    private static int stringEnd(ByteBuffer buf, int pos, int field) {
+        return pos + buf.getInt(pos + STRING_ENDS_POS + 4 * field);
+    }
+
+    /**
+     * Размер записи в файле со словарём dict вместе с флагом deleted;
+     * dict == null — все строки лежат в записи (оценка размера вне файла).
+     */
+    static int recordLength(Product p, StringDictionary dict) {
+        boolean brandCoded = dict != null && dict.code(BRAND, p.getBrand()) != 0;
+        boolean categoryCoded = dict != null && dict.code(CATEGORY, p.getCategory()) != 0;
+        return RECORD_HEADER_SIZE
+                + utf8Length(p.getName())
+                + (brandCoded ? 0 : utf8Length(p.getBrand()))
+                + (categoryCoded ? 0 : utf8Length(p.getCategory()))
+                + utf8Length(p.getDescription());
+    }
+
+    static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Длина строки в UTF-8 (как её посчитает getBytes), без создания массива */
+    private static int utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c <= 0x007F) {
+                len++;
+            } else if (c <= 0x07FF) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4; // суррогатная пара — один символ из 4 байт
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                len++;    // одиночный суррогат getBytes заменяет на '?'
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    /* ==================== Смена раскладки ==================== */
+
+    /**
+     * Переписывает файл раскладки fromLayout в раскладку режима mode. Записи
+     * (и удалённые тоже) переносятся по порядку, поэтому их смещения не меняются;
+     * заголовок со словарём копируется как есть.
+     */
+    private static void convertLayout(Path dataPath, int fromLayout, StorageMode mode) throws IOException {
+        Path tmpPath = dataPath.resolveSibling(dataPath.getFileName() + ".convert");
+        StorageMode sourceMode = fromLayout == LAYOUT_BLOCKS ? StorageMode.COMPRESSED : StorageMode.RANDOM_ACCESS;
+        try (DataStore source = open(dataPath, sourceMode)) {
+            byte[] header = new byte[HEADER_SIZE];
+            source.file.seek(0);
+            source.file.readFully(header);
+            ByteBuffer.wrap(header).putInt(LAYOUT_POS, layoutOf(mode));
+            Files.write(tmpPath, header);
+
+            try (DataStore target = open(tmpPath, mode)) {
+                List<Product> batch = new ArrayList<>();
+                List<Long> offsets = new ArrayList<>();
+                List<Boolean> deleted = new ArrayList<>();
+                source.scan((offset, isDeleted, p) -> {
+                    batch.add(p);
+                    offsets.add(offset);
+                    deleted.add(isDeleted);
+                    if (batch.size() == CONVERT_BATCH) {
+                        appendCopies(target, batch, offsets, deleted);
+                    }
+                });
+                appendCopies(target, batch, offsets, deleted);
+                target.sync();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpPath);
+            throw e;
+        }
+        try {
+            Files.move(tmpPath, dataPath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, dataPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void appendCopies(DataStore target, List<Product> batch, List<Long> offsets,
+                                     List<Boolean> deleted) throws IOException {
+        long[] copied = target.appendAll(batch);
+        for (int i = 0; i < copied.length; i++) {
+            if (copied[i] != offsets.get(i)) {
+                throw new IOException("Record " + batch.get(i).getProduct_id()
+                        + " changed its offset while converting the data file");
+            }
+            if (deleted.get(i)) {
+                target.markDeleted(copied[i]);
+            }
+        }
+        batch.clear();
+        offsets.clear();
+        deleted.clear();
+    }
+
+    /* ==================== Старые форматы (версии 1 и 2) ==================== */
+
+    private static final int VERSION_2_HEADER_SIZE = 16;
+    private static final int VERSION_2_RECORD_HEADER_SIZE = 45;
+
+    /**
+     * Переписывает .dat старого формата — версии 1 (без заголовка, строки writeUTF)
+     * или 2 (без словаря строк) — в текущий. Удалённые записи при этом отбрасываются.
+     * Возвращает true, если файл был преобразован — смещения всех записей
+     * изменились, и индексы нужно пересобрать.
+     */
+    static boolean upgradeLegacyFile(Path dataPath) throws IOException {
+        if (!Files.exists(dataPath) || Files.size(dataPath) == 0) {
+            return false;
+        }
+        int version;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(dataPath))) {
+            long size = Files.size(dataPath);
+            int first = size >= 4 ? in.readInt() : 0;
+            if (first != FILE_MAGIC) {
+                version = 1;
+            } else if (size >= 8 && in.readInt() == 2) {
+                version = 2;
+            } else {
+                return false; // текущий или неизвестный (его отвергнет open)
+            }
+        }
+
+        Path tmpPath = dataPath.resolveSibling(dataPath.getFileName() + ".upgrade");
+        StringDictionary dict = new StringDictionary(DICTIONARY_SIZE);
+        try (DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Files.newInputStream(dataPath), 1 << 16));
+             FileOutputStream fos = new FileOutputStream(tmpPath.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            writeHeader(out);
+            if (version == 2) {
+                in.skipNBytes(VERSION_2_HEADER_SIZE);
+            }
+            while (true) {
+                boolean deleted;
+                try {
+                    deleted = in.readBoolean();
+                } catch (EOFException e) {
+                    break; // конец файла
+                }
+                Product p = version == 1 ? readLegacyProduct(in) : readVersion2Product(in);
+                if (!deleted) {
+                    dict.add(BRAND, p.getBrand());
+                    dict.add(CATEGORY, p.getCategory());
+                    out.writeBoolean(false);
+                    writeProduct(out, p, dict);
+                }
+            }
+            out.flush();
+            dict.write(fos.getChannel()); // словарь — в заголовок, поверх пустого
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpPath);
+            throw e;
+        }
+        try {
+            Files.move(tmpPath, dataPath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpPath, dataPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /** Читаем запись старого формата (после флага deleted) */
+    private static Product readLegacyProduct(DataInput in) throws IOException {
+        Product p = new Product();
+        p.setProduct_id(in.readInt());
+        p.setSeller_id(in.readInt());
+        p.setPrice(in.readDouble());
+        p.setArticle(in.readInt());
+        p.setStock_quantity(in.readInt());
+
+        p.setName(in.readUTF());
+        p.setBrand(in.readUTF());
+        p.setCategory(in.readUTF());
+        p.setDescription(in.readUTF());
+        return p;
+    }
+
+    /** Читаем запись версии 2 (после флага deleted): те же поля, но без кодов, строки с 45-го байта */
+    private static Product readVersion2Product(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < VERSION_2_RECORD_HEADER_SIZE || length > MAX_RECORD_SIZE) {
+            throw new StreamCorruptedException("Corrupted record length: " + length);
+        }
+        byte[] record = new byte[length];
+        in.readFully(record, ID_POS, length - ID_POS);
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        Product p = new Product();
+        p.setProduct_id(buf.getInt(ID_POS));
+        p.setSeller_id(buf.getInt(SELLER_POS));
+        p.setPrice(buf.getDouble(PRICE_POS));
+        p.setArticle(buf.getInt(ARTICLE_POS));
+        p.setStock_quantity(buf.getInt(STOCK_POS));
+        String[] strings = new String[4];
+        int start = VERSION_2_RECORD_HEADER_SIZE;
+        for (int field = 0; field < strings.length; field++) {
+            int end = buf.getInt(STRING_ENDS_POS + 4 * field);
+            if (end < start || end > length) {
+                throw new StreamCorruptedException("Corrupted string table in record " + p.getProduct_id());
+            }
+            strings[field] = new String(record, start, end - start, StandardCharsets.UTF_8);
+            start = end;
+        }
+        p.setName(strings[NAME]);
+        p.setBrand(strings[BRAND]);
+        p.setCategory(strings[CATEGORY]);
+        p.setDescription(strings[DESCRIPTION]);
+        return p;
+    }
+}
@@ -4,8 +4,11 @@ package dao;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface Database<T, K> extends Closeable {
 
@@ -20,17 +23,41 @@ public interface Database<T, K> extends Closeable {
 
 
     boolean insert(T record) throws IOException;
+    BatchResult insertAll(Collection<T> records) throws IOException;
+    BatchResult upsertAll(Collection<T> records) throws IOException;
     boolean updateByKey(K key, T newRecord) throws IOException;
     int deleteByKey(K key) throws IOException;
     int deleteByField(String fieldName, Object value) throws IOException;
     Optional<T> findByKey(K key) throws IOException;
     List<T> findByField(String fieldName, Object value) throws IOException;
+    List<T> findByField(String fieldName, Object value, TaskMonitor monitor) throws IOException;
     List<T> findAll() throws IOException;
+    List<T> findPage(int fromRow, int count) throws IOException;
+    List<T> findByRange(String fieldName, Object from, Object to) throws IOException;
+    List<T> findByRange(String fieldName, Object from, Object to, TaskMonitor monitor) throws IOException;
+    List<T> findByPrefix(String fieldName, String prefix) throws IOException;
+    List<T> findByPrefix(String fieldName, String prefix, TaskMonitor monitor) throws IOException;
+    List<T> searchText(String query, int limit) throws IOException;
+    List<T> searchText(String query, int limit, TaskMonitor monitor) throws IOException;
+    List<T> find(Query query) throws IOException;
+    List<T> find(Query query, TaskMonitor monitor) throws IOException;
+    String explain(Query query) throws IOException;
+    Map<Object, FieldStats> aggregate(String groupBy, String valueField) throws IOException;
+    Map<Object, FieldStats> aggregate(String groupBy, String valueField, Query where, TaskMonitor monitor)
+            throws IOException;
+    Stream<T> streamAll() throws IOException;
+    Stream<T> streamByField(String fieldName, Object value) throws IOException;
 
 
     void backup(Path backupDir) throws IOException;
     void restore(Path backupDir) throws IOException;
     void exportToXlsx(Path targetFile) throws IOException;
+    void exportToXlsx(Path targetFile, TaskMonitor monitor) throws IOException;
+    ImportResult importFrom(Path sourceFile) throws IOException;
+
+
+    void addChangeListener(DataChangeListener<T, K> listener);
+    void removeChangeListener(DataChangeListener<T, K> listener);
 
 
     boolean isOpen();
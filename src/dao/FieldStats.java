@@ -0,0 +1,58 @@
+package dao;
+
+/** Count, sum, min, max и среднее числового поля по группе записей (Database.aggregate) */
+public class FieldStats {
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    FieldStats() {
+    }
+
+    void add(double value) {
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /** Добавляет статистику другого куска файла */
+    void merge(FieldStats other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "FieldStats{count=" + count + ", sum=" + sum + ", min=" + min
+                + ", max=" + max + ", avg=" + getAverage() + "}";
+    }
+}
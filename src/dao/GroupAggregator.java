@@ -0,0 +1,92 @@
+package dao;
+
+import model.Product;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Накопитель Database.aggregate для одного куска .dat.
+ *
+ * Это фильтр скана, который сам считает подошедшие записи и всегда
+ * возвращает false: скан перешагивает запись, не разбирая её в Product.
+ * Из байтов читаются только ключ группы и числовое поле, строка
+ * декодируется лишь тогда, когда группировка идёт по строковому полю
+ * (brand и category берутся из словаря файла без декодирования).
+ * Один экземпляр — на один поток; куски сводятся через merge.
+ */
+final class GroupAggregator implements RecordFilter {
+
+    private final String groupBy;
+    private final String valueField;
+    private final RecordFilter where;
+    private final StringDictionary dict;
+    private final SecondaryIndex.KeyType keyType;
+    private final int keyAt;     // позиция числового поля или номер строкового
+    private final boolean intValue;
+    private final int valueAt;
+    private final Map<Object, FieldStats> groups = new HashMap<>();
+
+    GroupAggregator(String groupBy, String valueField, RecordFilter where, StringDictionary dict) {
+        SecondaryIndex.KeyType valueType = SecondaryIndex.keyType(valueField);
+        if (valueType == SecondaryIndex.KeyType.STRING) {
+            throw new IllegalArgumentException("Aggregation needs a numeric field: " + valueField);
+        }
+        this.groupBy = groupBy;
+        this.valueField = valueField;
+        this.where = where;
+        this.dict = dict;
+        this.keyType = SecondaryIndex.keyType(groupBy);
+        this.keyAt = keyType == SecondaryIndex.KeyType.STRING
+                ? DataStore.stringField(groupBy)
+                : DataStore.numberPosition(groupBy);
+        this.intValue = valueType == SecondaryIndex.KeyType.INT;
+        this.valueAt = DataStore.numberPosition(valueField);
+    }
+
+    @Override
+    public boolean test(ByteBuffer buf, int pos) {
+        if (buf.get(pos) == 0 && where.test(buf, pos)) {
+            double value = intValue ? buf.getInt(pos + valueAt) : buf.getDouble(pos + valueAt);
+            stats(keyAt(buf, pos)).add(value);
+        }
+        return false; // Product не нужен
+    }
+
+    /** Запись, прочитанная по индексу (план с индексом) */
+    void add(Product p) {
+        Object value = SecondaryIndex.valueOf(p, valueField);
+        stats(SecondaryIndex.valueOf(p, groupBy)).add(((Number) value).doubleValue());
+    }
+
+    private Object keyAt(ByteBuffer buf, int pos) {
+        switch (keyType) {
+            case INT:
+                return buf.getInt(pos + keyAt);
+            case DOUBLE:
+                return buf.getDouble(pos + keyAt);
+            default:
+                return DataStore.stringAt(buf, pos, keyAt, dict);
+        }
+    }
+
+    private FieldStats stats(Object key) {
+        FieldStats stats = groups.get(key);
+        if (stats == null) {
+            stats = new FieldStats();
+            groups.put(key, stats);
+        }
+        return stats;
+    }
+
+    void merge(GroupAggregator other) {
+        for (Map.Entry<Object, FieldStats> e : other.groups.entrySet()) {
+            stats(e.getKey()).merge(e.getValue());
+        }
+    }
+
+    /** Группы по возрастанию ключа */
+    SortedMap<Object, FieldStats> result() {
+        return new TreeMap<>(groups);
+    }
+}
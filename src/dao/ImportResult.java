@@ -0,0 +1,105 @@
+package dao;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/** Итог импорта: сколько строк прочитано и загружено, отклонённые строки, скорость */
+public class ImportResult {
+
+    /** Отклонённая строка файла и причина */
+    public static class RejectedRow {
+        private final String sheet;
+        private final int rowNumber;
+        private final String reason;
+
+        RejectedRow(String sheet, int rowNumber, String reason) {
+            this.sheet = sheet;
+            this.rowNumber = rowNumber;
+            this.reason = reason;
+        }
+
+        /** Имя листа XLSX или null для CSV */
+        public String getSheet() {
+            return sheet;
+        }
+
+        public int getRowNumber() {
+            return rowNumber;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return (sheet == null ? "" : sheet + ", ") + "строка " + rowNumber + ": " + reason;
+        }
+    }
+
+    private final long rowsRead;
+    private final long imported;
+    private final long rejectedCount;
+    private final List<RejectedRow> rejectedRows;
+    private final long elapsedNanos;
+
+    ImportResult(long rowsRead, long imported, long rejectedCount,
+                 List<RejectedRow> rejectedRows, long elapsedNanos) {
+        this.rowsRead = rowsRead;
+        this.imported = imported;
+        this.rejectedCount = rejectedCount;
+        this.rejectedRows = Collections.unmodifiableList(rejectedRows);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Строки с данными (без заголовков) */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Отклонённые строки; при очень большом их числе хранятся только первые */
+    public List<RejectedRow> getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+    }
+
+    /** Отчёт об отклонённых строках в CSV: лист;строка;причина */
+    public void writeRejectedReport(Path reportFile) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8))) {
+            out.println("sheet;row;reason");
+            for (RejectedRow r : rejectedRows) {
+                out.println(quote(r.sheet == null ? "" : r.sheet) + ";" + r.rowNumber + ";" + quote(r.reason));
+            }
+        }
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Прочитано %d, загружено %d, отклонено %d за %.1f с (%.0f строк/с)",
+                rowsRead, imported, rejectedCount, elapsedNanos / 1e9, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,217 @@
+package dao;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Хранение индекса id -> смещение на диске: снимок (.idx) + журнал изменений.
+ *
+ * Каждое изменение индекса в памяти дописывается в буфер журнала,
+ * commit() сбрасывает буфер в конец файла журнала — стоимость пропорциональна
+ * числу изменений, а не размеру таблицы. Когда журнал становится больше снимка,
+ * делается checkpoint: индекс целиком пишется в новый снимок, журнал обнуляется.
+ *
+ * При открытии снимок читается, а журнал проигрывается поверх него.
+ * Записи журнала идемпотентны (put/remove с абсолютными значениями), поэтому
+ * повторное проигрывание после сбоя между записью снимка и очисткой журнала безопасно.
+ */
+class IndexJournal {
+
+    // отрицательное число: в старом формате .idx файл начинается с положительного id
+    private static final int SNAPSHOT_MAGIC = 0xC0DE1D01;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    /** Журнал меньше этого размера не сворачивается в снимок */
+    private static final long MIN_CHECKPOINT_BYTES = 1 << 20;
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private long journalSize;
+    private long snapshotSize;
+
+    IndexJournal(Path snapshotPath, Path journalPath) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = journalPath;
+    }
+
+    Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    Path getJournalPath() {
+        return journalPath;
+    }
+
+    boolean exists() {
+        return Files.exists(snapshotPath);
+    }
+
+    /* ==================== Изменения ==================== */
+
+    void logPut(int id, long offset) {
+        try {
+            pending.writeByte(OP_PUT);
+            pending.writeInt(id);
+            pending.writeLong(offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // запись в память не падает
+        }
+    }
+
+    void logRemove(int id) {
+        try {
+            pending.writeByte(OP_REMOVE);
+            pending.writeInt(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Дописывает накопленные изменения в файл журнала */
+    void commit() throws IOException {
+        if (pendingBytes.size() == 0) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(pendingBytes.toByteArray());
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(false);
+            journalSize = ch.size();
+        }
+        pendingBytes.reset();
+    }
+
+    /** Сколько байт изменений ждут commit() */
+    int pendingSize() {
+        return pendingBytes.size();
+    }
+
+    /** Пора ли свернуть журнал в снимок */
+    boolean needsCheckpoint() {
+        return journalSize > Math.max(MIN_CHECKPOINT_BYTES, snapshotSize);
+    }
+
+    /** Пишет снимок всего индекса и обнуляет журнал */
+    void checkpoint(IntLongHashMap index) throws IOException {
+        if (snapshotPath.getParent() != null) {
+            Files.createDirectories(snapshotPath.getParent());
+        }
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(index.size());
+            index.forEach((id, offset) -> {
+                out.writeInt(id);
+                out.writeLong(offset);
+            });
+            out.flush();
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(tmp, snapshotPath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        snapshotSize = Files.size(snapshotPath);
+
+        // снимок уже содержит всё из журнала
+        Files.deleteIfExists(journalPath);
+        journalSize = 0;
+        pendingBytes.reset();
+    }
+
+    /** Забывает незафиксированные изменения (индекс будет записан целиком) */
+    void discardPending() {
+        pendingBytes.reset();
+    }
+
+    /* ==================== Загрузка ==================== */
+
+    /** Читает снимок (новый или старый формат .idx) и проигрывает журнал */
+    void load(IntLongHashMap index) throws IOException {
+        index.clear();
+        pendingBytes.reset();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            int first = in.readInt();
+            if (first == SNAPSHOT_MAGIC) {
+                int version = in.readInt();
+                if (version != SNAPSHOT_VERSION) {
+                    throw new IOException("Unsupported index version: " + version);
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int id = in.readInt();
+                    index.put(id, in.readLong());
+                }
+            } else {
+                // старый формат: просто пары (id, offset) до конца файла
+                index.put(first, in.readLong());
+                while (true) {
+                    int id = in.readInt();
+                    long offset = in.readLong();
+                    index.put(id, offset);
+                }
+            }
+        } catch (EOFException e) {
+            // нормальное завершение чтения старого формата (или пустой файл)
+        }
+        snapshotSize = Files.size(snapshotPath);
+        replay(index);
+    }
+
+    private void replay(IntLongHashMap index) throws IOException {
+        journalSize = 0;
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        long good = 0; // позиция после последней целой записи
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                byte op = in.readByte();
+                int id = in.readInt();
+                if (op == OP_PUT) {
+                    index.put(id, in.readLong());
+                    good += 1 + 4 + 8;
+                } else if (op == OP_REMOVE) {
+                    index.remove(id);
+                    good += 1 + 4;
+                } else {
+                    break; // мусор в конце — дальше не читаем
+                }
+            }
+        } catch (EOFException e) {
+            // конец журнала или недописанная последняя запись
+        }
+        if (good < Files.size(journalPath)) {
+            // отрезаем недописанный хвост, чтобы новые записи шли за целыми
+            try (FileChannel ch = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                ch.truncate(good);
+            }
+        }
+        journalSize = good;
+    }
+
+    void delete() throws IOException {
+        pendingBytes.reset();
+        Files.deleteIfExists(snapshotPath);
+        Files.deleteIfExists(journalPath);
+    }
+}
@@ -0,0 +1,258 @@
+package dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Хеш-таблица int -> long с открытой адресацией (линейное пробирование).
+ *
+ * Замена HashMap<Integer, Long> для первичного индекса: ключи и значения
+ * лежат в двух плоских массивах, без объектов-обёрток и узлов — 12 байт
+ * на слот вместо ~60 байт на запись. Массивы могут жить вне кучи
+ * (direct ByteBuffer), тогда индекс вообще не нагружает сборщик мусора.
+ *
+ * Значения должны быть неотрицательными: -1 означает "нет ключа".
+ */
+class IntLongHashMap {
+
+    static final long NO_VALUE = -1L;
+
+    private static final int FREE_KEY = 0;          // ключ 0 хранится отдельно
+    private static final double LOAD_FACTOR = 0.6;
+    private static final int MAX_OFF_HEAP_CAPACITY = 1 << 27;
+
+    private final boolean offHeap;
+
+    private IntBuffer keys;
+    private LongBuffer values;
+    private int capacity;   // всегда степень двойки
+    private int mask;
+    private int size;       // без учёта ключа 0
+    private int threshold;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /** Обработчик пары при обходе таблицы */
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(int key, long value) throws IOException;
+    }
+
+    IntLongHashMap() {
+        this(16, false);
+    }
+
+    IntLongHashMap(int expectedSize, boolean offHeap) {
+        this.offHeap = offHeap;
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /* ==================== Операции ==================== */
+
+    long get(int key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey ? zeroValue : NO_VALUE;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys.get(slot);
+            if (k == key) {
+                return values.get(slot);
+            }
+            if (k == FREE_KEY) {
+                return NO_VALUE;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /** Кладёт значение, возвращает прежнее или NO_VALUE */
+    long put(int key, long value) {
+        if (key == FREE_KEY) {
+            long old = hasZeroKey ? zeroValue : NO_VALUE;
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys.get(slot);
+            if (k == key) {
+                long old = values.get(slot);
+                values.put(slot, value);
+                return old;
+            }
+            if (k == FREE_KEY) {
+                keys.put(slot, key);
+                values.put(slot, value);
+                if (++size >= threshold) {
+                    rehash(capacity * 2);
+                }
+                return NO_VALUE;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Удаляет ключ, возвращает прежнее значение или NO_VALUE */
+    long remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) {
+                return NO_VALUE;
+            }
+            hasZeroKey = false;
+            return zeroValue;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int k = keys.get(slot);
+            if (k == key) {
+                long old = values.get(slot);
+                shiftKeys(slot);
+                size--;
+                return old;
+            }
+            if (k == FREE_KEY) {
+                return NO_VALUE;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    void clear() {
+        allocate(16);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    /** Заранее расширяет таблицу под expectedSize ключей (одна перестройка вместо нескольких) */
+    void ensureCapacity(int expectedSize) {
+        int needed = tableSizeFor(expectedSize);
+        if (needed > capacity) {
+            rehash(needed);
+        }
+    }
+
+    void forEach(EntryVisitor visitor) throws IOException {
+        if (hasZeroKey) {
+            visitor.visit(FREE_KEY, zeroValue);
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            int k = keys.get(slot);
+            if (k != FREE_KEY) {
+                visitor.visit(k, values.get(slot));
+            }
+        }
+    }
+
+    /** Заменяет все значения (например, смещения после уплотнения .dat) */
+    void replaceValues(LongUnaryOperator function) {
+        if (hasZeroKey) {
+            zeroValue = function.applyAsLong(zeroValue);
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keys.get(slot) != FREE_KEY) {
+                values.put(slot, function.applyAsLong(values.get(slot)));
+            }
+        }
+    }
+
+    /* ==================== Внутреннее устройство ==================== */
+
+    private int slotOf(int key) {
+        // перемешиваем биты: id товаров идут подряд и иначе легли бы кучно
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Удаление без "надгробий": сдвигаем назад записи из той же цепочки,
+     * чтобы поиск по-прежнему останавливался на первом свободном слоте.
+     */
+    private void shiftKeys(int pos) {
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            int k;
+            while (true) {
+                k = keys.get(pos);
+                if (k == FREE_KEY) {
+                    keys.put(last, FREE_KEY);
+                    return;
+                }
+                int ideal = slotOf(k);
+                // запись можно перенести в last, если её идеальный слот не лежит в (last, pos]
+                if (last <= pos ? (last >= ideal || ideal > pos) : (last >= ideal && ideal > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys.put(last, k);
+            values.put(last, values.get(pos));
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        IntBuffer oldKeys = keys;
+        LongBuffer oldValues = values;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int k = oldKeys.get(slot);
+            if (k != FREE_KEY) {
+                int s = slotOf(k);
+                while (keys.get(s) != FREE_KEY) {
+                    s = (s + 1) & mask;
+                }
+                keys.put(s, k);
+                values.put(s, oldValues.get(slot));
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        threshold = (int) Math.min(newCapacity * LOAD_FACTOR, newCapacity - 1);
+        if (offHeap) {
+            if (newCapacity > MAX_OFF_HEAP_CAPACITY) {
+                // один direct ByteBuffer адресует не больше 2 ГБ
+                throw new IllegalStateException("Off-heap index is limited to "
+                        + MAX_OFF_HEAP_CAPACITY + " slots");
+            }
+            keys = ByteBuffer.allocateDirect(newCapacity * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            values = ByteBuffer.allocateDirect(newCapacity * Long.BYTES)
+                    .order(ByteOrder.nativeOrder()).asLongBuffer();
+        } else {
+            keys = IntBuffer.wrap(new int[newCapacity]);
+            values = LongBuffer.wrap(new long[newCapacity]);
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR) + 1;
+        int capacity = 16;
+        while (capacity < needed && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,115 @@
+package dao;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Ключи живых записей по возрастанию — для постраничного чтения (findPage):
+ * строка таблицы с номером row — это запись с ключом keys[row].
+ *
+ * Массив строится лениво по первичному индексу и дальше поддерживается
+ * на месте: ключ больше последнего просто дописывается в конец, остальные
+ * вставки и удаления сдвигают хвост массива. Когда сдвиги с момента сборки
+ * перевалили за несколько размеров массива (массовое удаление и т.п.),
+ * массив выбрасывается и при следующем обращении собирается заново —
+ * пересборка дешевле, чем продолжать сдвигать.
+ */
+class KeyOrder {
+
+    /** Во сколько размеров массива разрешено сдвигать до пересборки */
+    private static final int MAX_SHIFT_FACTOR = 4;
+
+    private int[] keys; // null — не собран
+    private int size;
+    private long shifted;
+
+    /**
+     * Ключи по возрастанию (собирает массив, если он сброшен); длина — size().
+     * Вызывать под блокировкой ProductDao: читатели могут собирать массив одновременно,
+     * поэтому сама сборка синхронизирована, а add/remove идут под блокировкой записи.
+     */
+    synchronized int[] keys(IntLongHashMap index) throws IOException {
+        if (keys == null) {
+            int[] collected = new int[Math.max(16, index.size())];
+            int[] n = {0};
+            index.forEach((id, offset) -> collected[n[0]++] = id);
+            Arrays.sort(collected, 0, n[0]);
+            keys = collected;
+            size = n[0];
+            shifted = 0;
+        }
+        return keys;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Позиция ключа, -1 — нет такого или массив не собран */
+    int indexOf(int key) {
+        if (keys == null) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        return i >= 0 ? i : -1;
+    }
+
+    void add(int key) {
+        if (keys == null) {
+            return;
+        }
+        if (size == 0 || key > keys[size - 1]) {
+            ensureCapacity();
+            keys[size++] = key;
+            return;
+        }
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if (i >= 0) {
+            return; // уже есть
+        }
+        int pos = -i - 1;
+        if (shift(size - pos)) {
+            ensureCapacity();
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            keys[pos] = key;
+            size++;
+        }
+    }
+
+    void remove(int key) {
+        if (keys == null) {
+            return;
+        }
+        int pos = Arrays.binarySearch(keys, 0, size, key);
+        if (pos < 0) {
+            return;
+        }
+        if (shift(size - pos - 1)) {
+            System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+            size--;
+        }
+    }
+
+    /** Сбрасывает массив — он будет собран заново по индексу */
+    void invalidate() {
+        keys = null;
+        size = 0;
+        shifted = 0;
+    }
+
+    /** Учитывает сдвиг; false — массив сброшен, сдвигать не нужно */
+    private boolean shift(int count) {
+        shifted += count;
+        if (shifted > (long) MAX_SHIFT_FACTOR * Math.max(size, 1024)) {
+            invalidate();
+            return false;
+        }
+        return true;
+    }
+
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length + (keys.length >> 1));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package dao;
+
+import model.Product;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Чтение .dat через отображение файла в память.
+ *
+ * Один MappedByteBuffer адресует не больше 2 ГБ, поэтому файл отображается
+ * сегментами по 1 ГБ. Каждый сегмент захватывает ещё MAX_RECORD_SIZE байт
+ * следующего, так что запись, начавшаяся в сегменте, целиком в нём лежит
+ * и декодируется без склейки буферов.
+ *
+ * Буферы читаются только абсолютными get-ами, а массив сегментов
+ * подменяется целиком, поэтому читать можно из нескольких потоков.
+ */
+class MappedDataStore extends DataStore {
+
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final MappedByteBuffer[] NO_SEGMENTS = new MappedByteBuffer[0];
+
+    private volatile MappedByteBuffer[] segments = NO_SEGMENTS;
+    private long mappedLength;             // сколько байт файла сейчас отображено
+    private volatile boolean stale = true; // файл вырос после последнего отображения
+
+    MappedDataStore(RandomAccessFile file, StringDictionary dictionary) {
+        super(file, dictionary);
+    }
+
+    @Override
+    protected void onGrow() {
+        // переотображаем лениво — при следующем чтении, а не на каждую вставку
+        stale = true;
+    }
+
+    @Override
+    protected synchronized void onTruncate() {
+        segments = NO_SEGMENTS;
+        mappedLength = 0;
+        stale = true;
+    }
+
+    /** Досоздаёт сегменты, если файл вырос, и возвращает актуальный набор */
+    private MappedByteBuffer[] remapIfGrown() throws IOException {
+        if (!stale) {
+            return segments;
+        }
+        synchronized (this) {
+            if (!stale) {
+                return segments; // пока ждали, другой читатель уже переотобразил
+            }
+            long length = channel.size();
+            MappedByteBuffer[] current = length < mappedLength ? NO_SEGMENTS : segments;
+            int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] updated = Arrays.copyOf(current, count);
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                long size = Math.min(length - start, SEGMENT_SIZE + MAX_RECORD_SIZE);
+                if (i < current.length && current[i].capacity() == size) {
+                    continue; // сегмент уже полный
+                }
+                updated[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+            segments = updated;
+            mappedLength = length;
+            stale = false;
+            return updated;
+        }
+    }
+
+    @Override
+    Product readAt(long offset) throws IOException {
+        MappedByteBuffer seg = remapIfGrown()[(int) (offset / SEGMENT_SIZE)];
+        int pos = (int) (offset % SEGMENT_SIZE);
+        if (seg.get(pos) != 0) {
+            return null; // deleted
+        }
+        Product p = new Product();
+        decode(seg, pos, p, dictionary);
+        return p;
+    }
+
+    @Override
+    long scan(long from, long to, RecordFilter filter, RecordVisitor visitor) throws IOException {
+        MappedByteBuffer[] segs = remapIfGrown();
+        long mapped = segs.length == 0 ? 0
+                : (segs.length - 1) * SEGMENT_SIZE + segs[segs.length - 1].capacity();
+        long end = Math.min(to, mapped);
+        long offset = from;
+        while (offset < end) {
+            MappedByteBuffer seg = segs[(int) (offset / SEGMENT_SIZE)];
+            int pos = (int) (offset % SEGMENT_SIZE);
+            if (filter.test(seg, pos)) {
+                Product p = new Product();
+                decode(seg, pos, p, dictionary);
+                visitor.visit(offset, seg.get(pos) != 0, p);
+            }
+            offset += recordLengthAt(seg, pos); // неподошедшие записи просто перешагиваем
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,50 @@
+package dao;
+
+import java.util.Arrays;
+
+/**
+ * Соответствие старых смещений записей новым после переписывания .dat.
+ * Пары добавляются по возрастанию старого смещения, поиск — двоичный.
+ */
+class OffsetRemap {
+
+    private long[] oldOffsets = new long[1024];
+    private long[] newOffsets = new long[1024];
+    private int[] ids = new int[1024];
+    private int size;
+
+    void add(int id, long oldOffset, long newOffset) {
+        if (size == oldOffsets.length) {
+            int capacity = size * 2;
+            oldOffsets = Arrays.copyOf(oldOffsets, capacity);
+            newOffsets = Arrays.copyOf(newOffsets, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        oldOffsets[size] = oldOffset;
+        newOffsets[size] = newOffset;
+        ids[size] = id;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int idAt(int i) {
+        return ids[i];
+    }
+
+    long oldOffsetAt(int i) {
+        return oldOffsets[i];
+    }
+
+    long newOffsetAt(int i) {
+        return newOffsets[i];
+    }
+
+    /** Новое смещение записи или -1, если запись не переносилась */
+    long map(long oldOffset) {
+        int i = Arrays.binarySearch(oldOffsets, 0, size, oldOffset);
+        return i >= 0 ? newOffsets[i] : -1;
+    }
+}
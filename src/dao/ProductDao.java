@@ -5,317 +5,1840 @@ import model.Product;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
-import org.apache.poi.ss.usermodel.Workbook;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 
 public class ProductDao implements Database<Product, Integer> {
 
+    /**
+     * Поля, по которым ведутся вторичные индексы (.sidx рядом с .idx).
+     * Индексы упорядочены: по ним же работают findByRange и findByPrefix.
+     */
+    private static final String[] INDEXED_FIELDS = {
+            "seller_id", "brand", "category", "article", "price", "stock_quantity", "name"
+    };
+
+    private static final int SECONDARY_MAGIC = 0x53494458; // "SIDX"
+    private static final int SECONDARY_VERSION = 4;
+
+    /** Размер буфера журнала индекса, после которого он сбрасывается на диск сам */
+    private static final int JOURNAL_FLUSH_BYTES = 1 << 20;
+
+    /** Сколько байт .dat (или записей по индексу) поток читает за одну блокировку */
+    private static final int READ_AHEAD_BYTES = 256 * 1024;
+    private static final int READ_AHEAD_RECORDS = 1024;
+
+    /** Экспорт в XLSX: колонки, окно строк SXSSF в памяти, выборка для ширины колонок */
+    static final String[] EXPORT_HEADERS = {
+            "product_id",
+            "seller_id",
+            "name",
+            "price",
+            "brand",
+            "article",
+            "stock_quantity",
+            "category",
+            "description"
+    };
+    private static final int EXPORT_ROW_WINDOW = 100;
+    private static final int EXPORT_SAMPLE_ROWS = 1000;
+    private static final int EXPORT_MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    /** На сколько кусков на ядро делится .dat при параллельном сканировании */
+    private static final int SEGMENTS_PER_CORE = 4;
+    /** Скан проверяет отмену и сообщает прогресс после каждого такого куска файла */
+    private static final int SCAN_CHUNK_BYTES = 4 << 20;
+    /** Экспорт проверяет отмену и сообщает прогресс раз в столько строк */
+    private static final int EXPORT_PROGRESS_ROWS = 1000;
+    /** Чтение найденных по индексу записей проверяет отмену раз в столько записей */
+    private static final int READ_PROGRESS_ROWS = 1000;
+    /** Уплотнение переносит записи в новый файл пачками такого размера */
+    private static final int COMPACTION_BATCH = 10_000;
+
     private final Path dataPath;
     private final Path indexPath;
+    private final Path secondaryIndexPath;
+    private final Path columnPath;
+    // снимок индекса (.idx) + журнал его изменений (.ijnl)
+    private final IndexJournal indexJournal;
+
+    private final StorageMode storageMode;
+
+    private DataStore dataFile;
+    // читатели (find*) работают параллельно, запись и смена файлов — эксклюзивно
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // индекс id -> смещение в файле .dat (примитивная хеш-таблица, можно вне кучи)
+    private final IntLongHashMap index;
+    // вторичные индексы: поле -> (значение поля -> смещения в .dat)
+    private final Map<String, SecondaryIndex> secondaryIndexes = new LinkedHashMap<>();
+    // полнотекстовый индекс по name и description; null — отключён (по умолчанию), searchText сканирует
+    private TextIndex textIndex;
+    // числовые поля по колонкам (.col) для фильтров и агрегатов; null — отключены
+    private ColumnStore columns;
+
+    private volatile boolean open;
+    // количество НЕудалённых записей; меняется под блокировкой записи, читается без неё
+    private volatile int recordCount;
+    private long deadBytes;  // байты удалённых записей, которые ещё лежат в .dat
+    private int generation;  // меняется при каждой замене/очистке .dat
+
+    // автоматическое уплотнение: доля мёртвых байт и минимальный их объём
+    private volatile double autoCompactionRatio = 0.5;
+    private volatile long autoCompactionMinBytes = 1 << 20;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private ExecutorService compactionExecutor;
+    private Future<?> pendingCompaction;
+    private boolean closing; // идёт close(): новые фоновые уплотнения не ставятся
+    // файлы меньше этого сканируются в одном потоке
+    private volatile long parallelScanMinBytes = 8 << 20;
+    // открытые потоки streamAll/streamByField: пока они есть, автоуплотнение ждёт
+    private final AtomicInteger openCursors = new AtomicInteger();
+
+    // кэш горячих записей для findByKey; сбрасывается при любом удалении/замене записи
+    private final RecordCache recordCache = new RecordCache(10_000, 32L << 20);
+    // ключи по возрастанию для постраничного чтения (findPage), собираются по требованию
+    private final KeyOrder keyOrder = new KeyOrder();
+    // подписчики на изменения; вызываются под блокировкой записи, в порядке изменений
+    private final List<DataChangeListener<Product, Integer>> listeners = new CopyOnWriteArrayList<>();
 
-    private RandomAccessFile dataFile;
-    // индекс id -> смещение в файле .dat
-    private final Map<Integer, Long> index = new HashMap<>();
+    public ProductDao(Path dataPath, Path indexPath) {
+        this(dataPath, indexPath, StorageMode.RANDOM_ACCESS);
+    }
 
-    private boolean open;
-    private int recordCount; // количество НЕудалённых записей
+    public ProductDao(Path dataPath, Path indexPath, StorageMode storageMode) {
+        this(dataPath, indexPath, storageMode, false);
+    }
 
-    public ProductDao(Path dataPath, Path indexPath) {
+    /**
+     * @param offHeapIndex держать первичный индекс в direct-памяти, а не в куче
+     */
+    public ProductDao(Path dataPath, Path indexPath, StorageMode storageMode, boolean offHeapIndex) {
         this.dataPath = dataPath;
         this.indexPath = indexPath;
+        this.storageMode = storageMode;
+        this.index = new IntLongHashMap(1024, offHeapIndex);
+        this.secondaryIndexPath = companionPath(indexPath, ".sidx");
+        this.columnPath = companionPath(indexPath, ".col");
+        this.indexJournal = new IndexJournal(indexPath, companionPath(indexPath, ".ijnl"));
+
+        for (String field : INDEXED_FIELDS) {
+            secondaryIndexes.put(field, new SecondaryIndex(field));
+        }
+    }
+
+    public ProductDao(String dataFileName, String indexFileName) {
+        this(Paths.get(dataFileName), Paths.get(indexFileName));
+    }
+
+    /* ==================== Работа с файлами БД ==================== */
+
+    @Override
+    public void create() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (dataPath.getParent() != null) {
+                Files.createDirectories(dataPath.getParent());
+            }
+            if (indexPath.getParent() != null) {
+                Files.createDirectories(indexPath.getParent());
+            }
+
+            dataFile = DataStore.open(dataPath, storageMode);
+            dataFile.truncate();        // очищаем
+            open = true;
+
+            clearIndexes();
+            recordCount = 0;
+            deadBytes = 0;
+            generation++;
+            saveIndex();                // создаём/очищаем индекс-файлы
+            fireReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void open() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!Files.exists(dataPath)) {
+                throw new FileNotFoundException("Data file not found: " + dataPath);
+            }
+            // файл старого формата переписывается, смещения записей меняются
+            boolean upgraded = DataStore.upgradeLegacyFile(dataPath);
+            dataFile = DataStore.open(dataPath, storageMode);
+            open = true;
+            generation++;
+            recordCache.clear(); // файлы могли подменить (restore)
+            keyOrder.invalidate();
+
+            if (upgraded) {
+                rebuildIndexFromData();
+                saveIndex();
+            } else {
+                loadIndexOrRebuild();
+            }
+            fireReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void loadIndexOrRebuild() throws IOException {
+        index.clear();
+        if (indexJournal.exists()) {
+            // читаем снимок индекса и проигрываем журнал изменений
+            indexJournal.load(index);
+            recordCount = index.size();
+            if (!loadSecondaryIndexes()) {
+                // вторичные индексы отсутствуют или устарели — пересобираем всё по .dat
+                rebuildIndexFromData();
+                saveIndex();
+            } else if (columns != null && !columns.read(columnPath, dataFile.length(), index.size())) {
+                rebuildColumns();
+            }
+        } else {
+            // если индекс-файла нет — восстанавливаем индекс, просканировав .dat
+            rebuildIndexFromData();
+            saveIndex();
+        }
+    }
+
+    /**
+     * Читает вторичные индексы из .sidx.
+     * Возвращает false, если файла нет или он не соответствует текущему .dat.
+     */
+    private boolean loadSecondaryIndexes() throws IOException {
+        if (!Files.exists(secondaryIndexPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(secondaryIndexPath)))) {
+            if (in.readInt() != SECONDARY_MAGIC || in.readInt() != SECONDARY_VERSION) {
+                return false;
+            }
+            long dataLength = in.readLong();
+            int liveCount = in.readInt();
+            long dead = in.readLong();
+            if (dataLength != dataFile.length() || liveCount != index.size()) {
+                return false; // .dat менялся без сохранения индексов
+            }
+            int fieldCount = in.readInt();
+            if (fieldCount != secondaryIndexes.size()) {
+                return false;
+            }
+            for (SecondaryIndex si : secondaryIndexes.values()) {
+                si.read(in);
+            }
+            boolean hasText = in.readBoolean();
+            if (textIndex != null) {
+                if (hasText) {
+                    textIndex.read(in);
+                } else {
+                    rebuildTextIndex(); // индекс включили после последнего сохранения
+                }
+            }
+            deadBytes = dead;
+            return true;
+        } catch (IOException e) {
+            // битый файл — просто пересоберём
+            for (SecondaryIndex si : secondaryIndexes.values()) {
+                si.clear();
+            }
+            if (textIndex != null) {
+                textIndex.clear();
+            }
+            return false;
+        }
+    }
+
+    private void rebuildIndexFromData() throws IOException {
+        clearIndexes();
+        long[] dead = {0};
+        dataFile.scan((offset, deleted, p) -> {
+            if (!deleted) {
+                // в журнал не пишем: после пересборки индекс сохраняется снимком
+                index.put(p.getProduct_id(), offset);
+                for (SecondaryIndex si : secondaryIndexes.values()) {
+                    si.add(p, offset);
+                }
+                if (textIndex != null) {
+                    textIndex.add(p, offset);
+                }
+                if (columns != null) {
+                    columns.add(p, offset);
+                }
+            } else {
+                dead[0] += dataFile.recordLength(p);
+            }
+        });
+        recordCount = index.size();
+        deadBytes = dead[0];
+    }
+
+    private void rebuildTextIndex() throws IOException {
+        textIndex.clear();
+        dataFile.scan(RecordFilter.LIVE, (offset, deleted, p) -> textIndex.add(p, offset));
+    }
+
+    private void rebuildColumns() throws IOException {
+        columns.clear();
+        dataFile.scan(RecordFilter.LIVE, (offset, deleted, p) -> columns.add(p, offset));
+    }
+
+    @Override
+    public void save() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            // сами данные уже на диске, нужно только зафиксировать изменения индекса
+            commitIndex();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Дописывает изменения индекса в журнал; большой журнал сворачивается в снимок */
+    private void commitIndex() throws IOException {
+        indexJournal.commit();
+        if (indexJournal.needsCheckpoint()) {
+            saveIndex();
+        }
+    }
+
+    /** Не даём буферу журнала в памяти расти бесконечно при массовой загрузке без save() */
+    private void flushIndexJournalIfLarge() throws IOException {
+        if (indexJournal.pendingSize() > JOURNAL_FLUSH_BYTES) {
+            commitIndex();
+        }
+    }
+
+    /** Полная запись индексов: снимок .idx (журнал обнуляется), .sidx и .col */
+    private void saveIndex() throws IOException {
+        indexJournal.checkpoint(index);
+        saveSecondaryIndexes();
+        saveColumns();
+    }
+
+    private void saveSecondaryIndexes() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(secondaryIndexPath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)))) {
+
+            out.writeInt(SECONDARY_MAGIC);
+            out.writeInt(SECONDARY_VERSION);
+            out.writeLong(dataFile.length());
+            out.writeInt(index.size());
+            out.writeLong(deadBytes);
+            out.writeInt(secondaryIndexes.size());
+            for (SecondaryIndex si : secondaryIndexes.values()) {
+                si.write(out);
+            }
+            out.writeBoolean(textIndex != null);
+            if (textIndex != null) {
+                textIndex.write(out);
+            }
+        }
+    }
+
+    private void saveColumns() throws IOException {
+        if (columns != null) {
+            columns.write(columnPath, dataFile.length());
+        } else {
+            Files.deleteIfExists(columnPath); // иначе при включении подхватится старый снимок
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            dataFile.truncate();    // очищаем .dat
+            clearIndexes();         // очищаем индексы в памяти
+            recordCount = 0;
+            deadBytes = 0;
+            generation++;
+            saveIndex();            // и на диске (пустой снимок вместо журнала)
+            fireReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(dataPath);
+        indexJournal.delete();
+        Files.deleteIfExists(secondaryIndexPath);
+        Files.deleteIfExists(columnPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // сначала закрываем очередь уплотнений: запись, успевшая до блокировки ниже,
+        // не должна поставить задачу, которая пойдёт по уже закрытому файлу
+        lock.writeLock().lock();
+        try {
+            closing = true;
+            if (compactionExecutor != null) {
+                compactionExecutor.shutdown();
+                compactionExecutor = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            awaitCompaction();
+        } catch (IOException e) {
+            lock.writeLock().lock();
+            try {
+                closing = false; // БД осталась открытой
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            closing = false;
+            if (dataFile != null) {
+                commitIndex();
+                saveSecondaryIndexes();
+                saveColumns();
+                dataFile.close();
+                dataFile = null;
+            }
+            open = false;
+            generation++;
+            recordCache.clear();
+            keyOrder.invalidate();
+            fireReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open || dataFile == null) {
+            throw new IOException("Database is not open");
+        }
+    }
+
+    /* ==================== Операции с записями ==================== */
+
+    @Override
+    public boolean insert(Product record) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int id = record.getProduct_id();
+
+            // проверка уникальности ключа
+            if (index.containsKey(id)) {
+                return false;
+            }
+
+            long offset = dataFile.append(record); // пишем в конец файла
+
+            indexRecord(record, offset);
+            keyOrder.add(id);
+            recordCount++;
+            fireChange(DataChangeEvent.Type.INSERTED, id, record);
+            flushIndexJournalIfLarge();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вставка пачки записей: все новые записи сериализуются в один буфер
+     * и дописываются в .dat одной записью, индексы обновляются разом.
+     * Записи с уже занятым ключом (в том числе повтор внутри пачки) пропускаются.
+     */
+    @Override
+    public BatchResult insertAll(Collection<Product> records) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            BatchResult.Outcome[] outcomes = new BatchResult.Outcome[records.size()];
+            List<Product> toWrite = new ArrayList<>(records.size());
+            Set<Integer> batchIds = new HashSet<>();
+            int i = 0;
+            for (Product p : records) {
+                int id = p.getProduct_id();
+                if (index.containsKey(id) || !batchIds.add(id)) {
+                    outcomes[i++] = BatchResult.Outcome.DUPLICATE_KEY;
+                } else {
+                    toWrite.add(p);
+                    outcomes[i++] = BatchResult.Outcome.INSERTED;
+                }
+            }
+            appendBatch(toWrite);
+            for (Product p : toWrite) {
+                // ключи и число записей — по одной, чтобы строка события была
+                // позицией на момент его применения, а не в итоговом порядке
+                keyOrder.add(p.getProduct_id());
+                recordCount++;
+                fireChange(DataChangeEvent.Type.INSERTED, p.getProduct_id(), p);
+            }
+            return new BatchResult(outcomes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вставка пачки с заменой: запись с существующим ключом помечается
+     * удалённой и дописывается заново, как в updateByKey.
+     * При повторе ключа внутри пачки побеждает последняя запись.
+     */
+    @Override
+    public BatchResult upsertAll(Collection<Product> records) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            BatchResult.Outcome[] outcomes = new BatchResult.Outcome[records.size()];
+            List<Product> toWrite = new ArrayList<>(records.size());
+            Map<Integer, Integer> batchPositions = new HashMap<>();
+            Set<Integer> replaced = new HashSet<>(); // ключи, которые уже были в БД
+            int i = 0;
+            for (Product p : records) {
+                int id = p.getProduct_id();
+                Integer pos = batchPositions.get(id);
+                if (pos != null) {
+                    toWrite.set(pos, p); // ключ уже был в этой пачке
+                    outcomes[i++] = BatchResult.Outcome.UPDATED;
+                    continue;
+                }
+                long oldOffset = index.get(id);
+                if (oldOffset != IntLongHashMap.NO_VALUE) {
+                    Product old = dataFile.readAt(oldOffset);
+                    dataFile.markDeleted(oldOffset);
+                    indexRemove(id);
+                    if (old != null) {
+                        unindexRecord(old, oldOffset);
+                        deadBytes += dataFile.recordLength(old);
+                    }
+                    replaced.add(id);
+                    outcomes[i++] = BatchResult.Outcome.UPDATED;
+                } else {
+                    outcomes[i++] = BatchResult.Outcome.INSERTED;
+                }
+                batchPositions.put(id, toWrite.size());
+                toWrite.add(p);
+            }
+            appendBatch(toWrite);
+            for (Product p : toWrite) {
+                if (replaced.contains(p.getProduct_id())) {
+                    fireChange(DataChangeEvent.Type.UPDATED, p.getProduct_id(), p);
+                } else {
+                    keyOrder.add(p.getProduct_id()); // по одной, как в insertAll
+                    recordCount++;
+                    fireChange(DataChangeEvent.Type.INSERTED, p.getProduct_id(), p);
+                }
+            }
+            scheduleAutoCompaction();
+            return new BatchResult(outcomes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Дописывает пачку в .dat одной записью и вносит её в индексы.
+     * Новые ключи в keyOrder вносит вызывающий — вместе с событием INSERTED.
+     */
+    private void appendBatch(List<Product> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        index.ensureCapacity(index.size() + records.size());
+        long[] offsets = dataFile.appendAll(records);
+        for (int i = 0; i < offsets.length; i++) {
+            indexRecord(records.get(i), offsets[i]);
+        }
+        flushIndexJournalIfLarge();
+    }
+
+    @Override
+    public boolean updateByKey(Integer key, Product newRecord) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            long oldOffset = index.get(key);
+            if (oldOffset == IntLongHashMap.NO_VALUE) {
+                return false;
+            }
+
+            // помечаем старую запись как удалённую
+            Product old = dataFile.readAt(oldOffset);
+            dataFile.markDeleted(oldOffset);
+            indexRemove(key);
+            if (old != null) {
+                unindexRecord(old, oldOffset);
+                deadBytes += dataFile.recordLength(old);
+            }
+
+            // гарантируем, что ключ у новой записи правильный
+            newRecord.setProduct_id(key);
+
+            // дописываем новую запись в конец
+            long offset = dataFile.append(newRecord);
+
+            indexRecord(newRecord, offset);
+            // recordCount не меняем: количество живых записей то же
+            fireChange(DataChangeEvent.Type.UPDATED, key, newRecord);
+            flushIndexJournalIfLarge();
+            scheduleAutoCompaction();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteByKey(Integer key) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            long offset = index.get(key);
+            if (offset == IntLongHashMap.NO_VALUE) {
+                return 0;
+            }
+            Product old = dataFile.readAt(offset);
+            dataFile.markDeleted(offset);
+            indexRemove(key);
+            keyDeleted(key);
+            if (old != null) {
+                unindexRecord(old, offset);
+                deadBytes += dataFile.recordLength(old);
+            }
+            flushIndexJournalIfLarge();
+            scheduleAutoCompaction();
+            return 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteByField(String fieldName, Object value) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int[] deletedCount = {0};
+
+            SecondaryIndex si = secondaryIndexes.get(fieldName);
+            if (si != null) {
+                // по индексированному полю сканировать файл не нужно
+                for (long recordOffset : si.find(value)) {
+                    Product p = dataFile.readAt(recordOffset);
+                    if (p != null) {
+                        dataFile.markDeleted(recordOffset);
+                        unindexRecord(p, recordOffset);
+                        keyDeleted(p.getProduct_id());
+                        deadBytes += dataFile.recordLength(p);
+                        deletedCount[0]++;
+                    }
+                }
+                flushIndexJournalIfLarge();
+                scheduleAutoCompaction();
+                return deletedCount[0];
+            }
+
+            // поиск совпадений может идти параллельно, сами удаления — в этом потоке
+            scanMatching(fieldFilter(fieldName, value, dataFile.dictionary()), TaskMonitor.NONE, (recordOffset, deleted, p) -> {
+                dataFile.markDeleted(recordOffset);
+                unindexRecord(p, recordOffset);
+                keyDeleted(p.getProduct_id());
+                deadBytes += dataFile.recordLength(p);
+                deletedCount[0]++;
+            });
+            flushIndexJournalIfLarge();
+            scheduleAutoCompaction();
+            return deletedCount[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Product> findByKey(Integer key) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Product cached = recordCache.get(key);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            long offset = index.get(key);
+            if (offset == IntLongHashMap.NO_VALUE) {
+                return Optional.empty();
+            }
+            Product p = dataFile.readAt(offset);
+            if (p != null) {
+                recordCache.put(p);
+            }
+            return Optional.ofNullable(p);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Product> findByField(String fieldName, Object value) throws IOException {
+        return findByField(fieldName, value, TaskMonitor.NONE);
+    }
+
+    /**
+     * Поиск по полю с прогрессом и отменой: при скане .dat прогресс — байты файла,
+     * при отмене бросается CancellationException. Поиск по индексу не отменяется — он быстрый.
+     */
+    @Override
+    public List<Product> findByField(String fieldName, Object value, TaskMonitor monitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            List<Product> result = new ArrayList<>();
+
+            // поиск по ключу — через индекс
+            if ("product_id".equals(fieldName)) {
+                Integer key = toInt(value);
+                return findByKey(key).map(List::of).orElseGet(List::of);
+            }
+
+            // поиск по полю со вторичным индексом — читаем только найденные записи
+            SecondaryIndex si = secondaryIndexes.get(fieldName);
+            if (si != null) {
+                for (long offset : si.find(value)) {
+                    Product p = dataFile.readAt(offset);
+                    if (p != null) {
+                        result.add(p);
+                    }
+                }
+                return result;
+            }
+
+            // остальные поля сравниваем прямо в байтах записи, Product создаётся только для совпавших
+            scanMatching(fieldFilter(fieldName, value, dataFile.dictionary()), monitor, (offset, deleted, p) -> result.add(p));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Product> findAll() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            List<Product> all = new ArrayList<>();
+            dataFile.scan(RecordFilter.LIVE, (offset, deleted, p) -> all.add(p));
+            return all;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Страница записей по возрастанию ключа: count записей начиная с позиции fromRow
+     * (как строки таблицы, отсортированной по product_id). Читаются только эти записи:
+     * если они лежат в .dat рядом (не дальше READ_AHEAD_BYTES), диапазон файла
+     * читается одним сканом, иначе — по одной по смещениям из индекса.
+     */
+    @Override
+    public List<Product> findPage(int fromRow, int count) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int[] keys = keyOrder.keys(index);
+            int to = (int) Math.min(keyOrder.size(), (long) fromRow + count);
+            if (fromRow < 0 || fromRow >= to) {
+                return new ArrayList<>();
+            }
+
+            Product[] page = new Product[to - fromRow];
+            Map<Long, Integer> toRead = new HashMap<>();
+            long min = Long.MAX_VALUE;
+            long max = -1;
+            for (int i = 0; i < page.length; i++) {
+                int key = keys[fromRow + i];
+                page[i] = recordCache.get(key);
+                long offset = index.get(key);
+                if (page[i] == null && offset != IntLongHashMap.NO_VALUE) {
+                    toRead.put(offset, i);
+                    min = Math.min(min, offset);
+                    max = Math.max(max, offset);
+                }
+            }
+            if (!toRead.isEmpty() && max - min <= READ_AHEAD_BYTES) {
+                dataFile.scan(min, max + 1, RecordFilter.LIVE, (offset, deleted, p) -> {
+                    Integer row = toRead.get(offset);
+                    if (row != null) {
+                        page[row] = p;
+                    }
+                });
+            } else {
+                for (Map.Entry<Long, Integer> e : toRead.entrySet()) {
+                    page[e.getValue()] = dataFile.readAt(e.getKey());
+                }
+            }
+
+            List<Product> result = new ArrayList<>(page.length);
+            for (Product p : page) {
+                if (p != null) {
+                    result.add(p);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ==================== Диапазоны и префиксы ==================== */
+
+    @Override
+    public List<Product> findByRange(String fieldName, Object from, Object to) throws IOException {
+        return findByRange(fieldName, from, to, TaskMonitor.NONE);
+    }
+
+    /**
+     * Записи, у которых поле лежит в [from, to] (обе границы включительно, null — без границы),
+     * по возрастанию значения поля, равные — в порядке файла. product_id берётся
+     * из упорядоченных ключей, поля со вторичным индексом — из его упорядоченных значений,
+     * читаются только найденные записи. Остальные поля (description) сканируются.
+     */
+    @Override
+    public List<Product> findByRange(String fieldName, Object from, Object to, TaskMonitor monitor)
+            throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if ("product_id".equals(fieldName)) {
+                return readOffsets(keyRangeOffsets(from, to), monitor);
+            }
+            SecondaryIndex si = secondaryIndexes.get(fieldName);
+            if (si != null) {
+                return readOffsets(si.range(from, to), monitor);
+            }
+
+            Object lo = from == null ? null : SecondaryIndex.normalize(fieldName, from);
+            Object hi = to == null ? null : SecondaryIndex.normalize(fieldName, to);
+            return scanSorted(fieldName, RecordFilter.LIVE, monitor, value ->
+                    (lo == null || SecondaryIndex.compare(value, lo) >= 0)
+                            && (hi == null || SecondaryIndex.compare(value, hi) <= 0));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Product> findByPrefix(String fieldName, String prefix) throws IOException {
+        return findByPrefix(fieldName, prefix, TaskMonitor.NONE);
+    }
+
+    /**
+     * Записи, у которых строковое поле начинается с prefix (с учётом регистра),
+     * по возрастанию значения поля. Для name, brand, category — по индексу,
+     * для description — сканом с проверкой префикса прямо в байтах записи.
+     */
+    @Override
+    public List<Product> findByPrefix(String fieldName, String prefix, TaskMonitor monitor)
+            throws IOException {
+        if (SecondaryIndex.keyType(fieldName) != SecondaryIndex.KeyType.STRING) {
+            throw new IllegalArgumentException("Prefix search needs a text field: " + fieldName);
+        }
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            SecondaryIndex si = secondaryIndexes.get(fieldName);
+            if (si != null) {
+                return readOffsets(si.prefix(prefix), monitor);
+            }
+            RecordFilter startsWith = DataStore.stringStartsWith(
+                    DataStore.stringField(fieldName), prefix, dataFile.dictionary());
+            RecordFilter filter = (buf, pos) -> buf.get(pos) == 0 && startsWith.test(buf, pos);
+            return scanSorted(fieldName, filter, monitor, value -> true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Смещения записей с ключами в [from, to] по возрастанию ключа */
+    private long[] keyRangeOffsets(Object from, Object to) throws IOException {
+        int[] keys = keyOrder.keys(index);
+        int size = keyOrder.size();
+        int lo = 0;
+        int hi = size;
+        if (from != null) {
+            int i = Arrays.binarySearch(keys, 0, size, toInt(from));
+            lo = i >= 0 ? i : -i - 1;
+        }
+        if (to != null) {
+            int i = Arrays.binarySearch(keys, 0, size, toInt(to));
+            hi = i >= 0 ? i + 1 : -i - 1;
+        }
+        long[] offsets = new long[Math.max(0, hi - lo)];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = index.get(keys[lo + i]);
+        }
+        return offsets;
+    }
+
+    /** Читает записи по смещениям в заданном порядке, проверяя отмену */
+    private List<Product> readOffsets(long[] offsets, TaskMonitor monitor) throws IOException {
+        List<Product> result = new ArrayList<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            if (i % READ_PROGRESS_ROWS == 0) {
+                checkCancelled(monitor);
+                monitor.progress(i, offsets.length);
+            }
+            Product p = dataFile.readAt(offsets[i]);
+            if (p != null) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    /** Скан без индекса: записи, чьё значение поля подошло, по возрастанию этого значения */
+    private List<Product> scanSorted(String fieldName, RecordFilter filter, TaskMonitor monitor,
+                                     Predicate<Object> matches) throws IOException {
+        List<Product> result = new ArrayList<>();
+        scanMatching(filter, monitor, (offset, deleted, p) -> {
+            if (matches.test(SecondaryIndex.valueOf(p, fieldName))) {
+                result.add(p);
+            }
+        });
+        // сортировка устойчивая: равные значения остаются в порядке файла
+        result.sort((a, b) -> SecondaryIndex.compare(
+                SecondaryIndex.valueOf(a, fieldName), SecondaryIndex.valueOf(b, fieldName)));
+        return result;
+    }
+
+    /* ==================== Запросы из нескольких условий ==================== */
+
+    @Override
+    public List<Product> find(Query query) throws IOException {
+        return find(query, TaskMonitor.NONE);
+    }
+
+    /**
+     * Записи, подходящие под query, в порядке файла. План выбирает QueryPlanner:
+     * если самое избирательное условие с индексом отбирает мало записей, читаются
+     * только они (и проверяются всем условием); условие только по числовым полям
+     * при включённых колонках проверяется по ним, и читаются лишь совпавшие записи;
+     * иначе .dat сканируется один раз с проверкой всего условия по байтам записи —
+     * Product создаётся только для совпавших.
+     */
+    @Override
+    public List<Product> find(Query query, TaskMonitor monitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            QueryPlanner.Plan plan = planner().plan(query);
+            List<Product> result = new ArrayList<>();
+            if (plan.usesIndex()) {
+                for (Product p : readOffsets(plan.offsets(), monitor)) {
+                    if (query.test(p)) {
+                        result.add(p);
+                    }
+                }
+                return result;
+            }
+            if (plan.usesColumns()) {
+                return readOffsets(columns.select(plan.rowFilter()), monitor);
+            }
+            RecordFilter filter = query.filter(dataFile.dictionary());
+            scanMatching((buf, pos) -> buf.get(pos) == 0 && filter.test(buf, pos), monitor,
+                    (offset, deleted, p) -> result.add(p));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** План, который выбрал бы find(query): способ доступа, оценка числа записей, фильтр */
+    @Override
+    public String explain(Query query) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return planner().plan(query).explain();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private QueryPlanner planner() {
+        return new QueryPlanner(index, keyOrder, secondaryIndexes, columns, recordCount);
+    }
+
+    /* ==================== Агрегаты ==================== */
+
+    @Override
+    public Map<Object, FieldStats> aggregate(String groupBy, String valueField) throws IOException {
+        return aggregate(groupBy, valueField, null, TaskMonitor.NONE);
+    }
+
+    /**
+     * count/sum/min/max/avg числового поля valueField (price, stock_quantity, ...)
+     * по группам значений groupBy (category, brand, seller_id, ...), по возрастанию ключа.
+     * where (может быть null) отбирает записи, план для него выбирает QueryPlanner.
+     * Без индекса — один проход по .dat (параллельно по кускам), из записи читаются
+     * только байты ключа и значения, Product не создаётся. Если включены колонки
+     * и группа, значение и where — только числовые поля, .dat не читается вовсе.
+     */
+    @Override
+    public Map<Object, FieldStats> aggregate(String groupBy, String valueField, Query where,
+                                             TaskMonitor monitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            StringDictionary dict = dataFile.dictionary();
+            RecordFilter filter = where == null ? RecordFilter.ALL : where.filter(dict);
+            GroupAggregator total = new GroupAggregator(groupBy, valueField, filter, dict);
+            if (columns != null && ColumnStore.covers(groupBy, valueField)) {
+                IntPredicate rows = where == null ? row -> true : columns.compile(where);
+                if (rows != null) {
+                    return columns.aggregate(groupBy, valueField, rows);
+                }
+            }
+            QueryPlanner.Plan plan = where == null ? null : planner().plan(where);
+            if (plan != null && plan.usesIndex()) {
+                for (Product p : readOffsets(plan.offsets(), monitor)) {
+                    if (where.test(p)) {
+                        total.add(p);
+                    }
+                }
+                return total.result();
+            }
+            for (GroupAggregator part : scanSegments(
+                    () -> new GroupAggregator(groupBy, valueField, filter, dict), monitor)) {
+                total.merge(part);
+            }
+            return total.result();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ==================== Полнотекстовый поиск ==================== */
+
+    @Override
+    public List<Product> searchText(String query, int limit) throws IOException {
+        return searchText(query, limit, TaskMonitor.NONE);
+    }
+
+    /**
+     * Записи, в названии или описании которых есть хотя бы одно слово запроса
+     * (без учёта регистра и окончаний, см. TextAnalyzer), от самых релевантных
+     * (BM25, слова названия весят вдвое), не больше limit. С полнотекстовым
+     * индексом читаются только найденные записи, без него .dat сканируется.
+     */
+    @Override
+    public List<Product> searchText(String query, int limit, TaskMonitor monitor) throws IOException {
+        List<String> terms = TextAnalyzer.queryTerms(query);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if (terms.isEmpty() || limit <= 0) {
+                return new ArrayList<>();
+            }
+            if (textIndex != null) {
+                return readOffsets(textIndex.search(terms, limit), monitor);
+            }
+
+            // без индекса: один проход, число записей со словом (df) и длины считаются по ходу
+            long[] df = new long[terms.size()];
+            long[] docs = {0, 0}; // записей, сумма длин
+            List<TextMatch> matches = new ArrayList<>();
+            scanMatching(RecordFilter.LIVE, monitor, (offset, deleted, p) -> {
+                Map<String, Integer> tf = TextAnalyzer.termFrequencies(p);
+                int length = TextIndex.length(tf);
+                docs[0]++;
+                docs[1] += length;
+                int[] found = null;
+                for (int i = 0; i < df.length; i++) {
+                    Integer f = tf.get(terms.get(i));
+                    if (f != null) {
+                        if (found == null) {
+                            found = new int[df.length];
+                        }
+                        found[i] = f;
+                        df[i]++;
+                    }
+                }
+                if (found != null) {
+                    matches.add(new TextMatch(offset, p, found, length));
+                }
+            });
+
+            double avgLength = TextIndex.averageLength(docs[0], docs[1]);
+            PriorityQueue<TextIndex.Hit> top = new PriorityQueue<>(TextIndex.Hit.WORST_FIRST);
+            Map<Long, Product> byOffset = new HashMap<>();
+            for (TextMatch m : matches) {
+                double score = 0;
+                for (int i = 0; i < df.length; i++) {
+                    if (m.tf[i] > 0) {
+                        score += TextIndex.idf(df[i], docs[0]) * TextIndex.termWeight(m.tf[i], m.length, avgLength);
+                    }
+                }
+                TextIndex.offer(top, m.offset, score, limit);
+                byOffset.put(m.offset, m.product);
+            }
+            List<Product> result = new ArrayList<>(top.size());
+            for (long offset : TextIndex.Hit.bestFirst(top)) {
+                result.add(byOffset.get(offset));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public ProductDao(String dataFileName, String indexFileName) {
-        this(Paths.get(dataFileName), Paths.get(indexFileName));
+    /** Запись, найденная сканом по словам: частоты слов запроса и длина */
+    private static final class TextMatch {
+        final long offset;
+        final Product product;
+        final int[] tf;
+        final int length;
+
+        TextMatch(long offset, Product product, int[] tf, int length) {
+            this.offset = offset;
+            this.product = product;
+            this.tf = tf;
+            this.length = length;
+        }
     }
 
-    /* ==================== Работа с файлами БД ==================== */
-
-    @Override
-    public void create() throws IOException {
-        if (dataPath.getParent() != null) {
-            Files.createDirectories(dataPath.getParent());
-        }
-        if (indexPath.getParent() != null) {
-            Files.createDirectories(indexPath.getParent());
+    /* ==================== Параллельное сканирование ==================== */
+
+    /**
+     * Передаёт visitor-у записи, прошедшие фильтр, в порядке файла.
+     * Большой .dat делится на куски по границам записей, куски сканируются
+     * параллельно в ForkJoinPool.commonPool(), совпадения склеиваются по порядку.
+     * visitor вызывается только в текущем потоке, поэтому может менять файл и индексы.
+     * monitor получает число просканированных байт и может отменить скан.
+     * Вызывать под блокировкой (чтения или записи).
+     */
+    private void scanMatching(RecordFilter filter, TaskMonitor monitor, RecordVisitor visitor)
+            throws IOException {
+        long end = dataFile.length();
+        long total = end - DataStore.HEADER_SIZE;
+        AtomicLong scanned = new AtomicLong();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        if (end < parallelScanMinBytes || parallelism < 2) {
+            scanChunks(DataStore.HEADER_SIZE, end, filter, visitor, monitor, scanned, total);
+            return;
         }
 
-        dataFile = new RandomAccessFile(dataPath.toFile(), "rw");
-        dataFile.setLength(0);      // очищаем
-        open = true;
+        long[] bounds = segmentBounds(end, parallelism * SEGMENTS_PER_CORE);
+        List<Future<List<Match>>> parts = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            long from = bounds[i];
+            long to = bounds[i + 1];
+            parts.add(ForkJoinPool.commonPool().submit(() -> {
+                List<Match> found = new ArrayList<>();
+                scanChunks(from, to, filter, (offset, deleted, p) -> found.add(new Match(offset, p)),
+                        monitor, scanned, total);
+                return found;
+            }));
+        }
 
-        index.clear();
-        recordCount = 0;
-        saveIndex();                // создаём/очищаем индекс-файл
+        for (Future<List<Match>> part : parts) {
+            for (Match m : await(part)) {
+                visitor.visit(m.offset, false, m.product);
+            }
+        }
     }
 
-    @Override
-    public void open() throws IOException {
-        if (!Files.exists(dataPath)) {
-            throw new FileNotFoundException("Data file not found: " + dataPath);
+    /**
+     * Прогоняет по каждому куску .dat свой фильтр из factory — параллельно,
+     * на тех же кусках, что scanMatching, — и возвращает фильтры в порядке кусков.
+     * Для фильтров, которые сами накапливают результат и возвращают false
+     * (GroupAggregator): файл обходится без создания Product.
+     * Вызывать под блокировкой (чтения или записи).
+     */
+    private <F extends RecordFilter> List<F> scanSegments(Supplier<F> factory, TaskMonitor monitor)
+            throws IOException {
+        long end = dataFile.length();
+        long total = end - DataStore.HEADER_SIZE;
+        AtomicLong scanned = new AtomicLong();
+        RecordVisitor none = (offset, deleted, p) -> { };
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        if (end < parallelScanMinBytes || parallelism < 2) {
+            F filter = factory.get();
+            scanChunks(DataStore.HEADER_SIZE, end, filter, none, monitor, scanned, total);
+            return List.of(filter);
         }
-        dataFile = new RandomAccessFile(dataPath.toFile(), "rw");
-        open = true;
 
-        loadIndexOrRebuild();
+        long[] bounds = segmentBounds(end, parallelism * SEGMENTS_PER_CORE);
+        List<Future<F>> parts = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            long from = bounds[i];
+            long to = bounds[i + 1];
+            parts.add(ForkJoinPool.commonPool().submit(() -> {
+                F filter = factory.get();
+                scanChunks(from, to, filter, none, monitor, scanned, total);
+                return filter;
+            }));
+        }
+        List<F> filters = new ArrayList<>(parts.size());
+        for (Future<F> part : parts) {
+            filters.add(await(part));
+        }
+        return filters;
     }
 
-    private void loadIndexOrRebuild() throws IOException {
-        index.clear();
-        if (Files.exists(indexPath)) {
-            // читаем индекс из файла
-            try (DataInputStream in = new DataInputStream(
-                    new BufferedInputStream(Files.newInputStream(indexPath)))) {
-                while (true) {
-                    int id = in.readInt();
-                    long offset = in.readLong();
-                    index.put(id, offset);
-                }
-            } catch (EOFException e) {
-                // нормальное завершение чтения файла
+    /** Результат куска параллельного скана; ошибки куска бросаются как есть */
+    private static <T> T await(Future<T> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
-            recordCount = index.size();
-        } else {
-            // если индекс-файла нет — восстанавливаем индекс, просканировав .dat
-            rebuildIndexFromData();
-            saveIndex();
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new IOException("Parallel scan failed", e.getCause());
         }
     }
 
-    private void rebuildIndexFromData() throws IOException {
-        index.clear();
-        dataFile.seek(0);
-        long fileLength = dataFile.length();
-        int count = 0;
-        while (dataFile.getFilePointer() < fileLength) {
-            long offset = dataFile.getFilePointer();
-            boolean deleted = dataFile.readBoolean();
-            Product p = readProduct(dataFile);
-            if (!deleted) {
-                index.put(p.getProduct_id(), offset);
-                count++;
+    /** Сканирует [from, to) кусками по SCAN_CHUNK_BYTES, проверяя отмену перед каждым */
+    private void scanChunks(long from, long to, RecordFilter filter, RecordVisitor visitor,
+                            TaskMonitor monitor, AtomicLong scanned, long total) throws IOException {
+        long position = from;
+        while (position < to) {
+            checkCancelled(monitor);
+            long next = dataFile.scan(position, Math.min(to, position + SCAN_CHUNK_BYTES), filter, visitor);
+            if (next <= position) {
+                break; // дальше файла записей нет
             }
+            monitor.progress(scanned.addAndGet(next - position), total);
+            position = next;
         }
-        recordCount = count;
     }
 
-    @Override
-    public void save() throws IOException {
-        ensureOpen();
-        // сами данные уже на диске, нужно только сохранить индекс
-        saveIndex();
+    private static void checkCancelled(TaskMonitor monitor) {
+        if (monitor.isCancelled()) {
+            throw new CancellationException("Operation cancelled");
+        }
     }
 
-    private void saveIndex() throws IOException {
-        if (indexPath.getParent() != null) {
-            Files.createDirectories(indexPath.getParent());
+    /**
+     * Границы кусков для параллельного сканирования: начало записей из первичного
+     * индекса, ближайшие к равномерной разбивке файла. Удалённые записи между
+     * границами просто попадают в соседний кусок.
+     */
+    private long[] segmentBounds(long end, int segments) throws IOException {
+        long[] targets = new long[segments - 1];
+        long[] best = new long[segments - 1];
+        long step = (end - DataStore.HEADER_SIZE) / segments;
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = DataStore.HEADER_SIZE + step * (i + 1);
+            best[i] = Long.MAX_VALUE;
+        }
+        // для каждой цели ищем наименьшее смещение записи не меньше неё:
+        // смещение кандидат для ближайшей цели слева, остальное доделывает проход справа налево
+        index.forEach((id, offset) -> {
+            int i = Arrays.binarySearch(targets, offset);
+            int target = i >= 0 ? i : -i - 2;
+            if (target >= 0 && offset < best[target]) {
+                best[target] = offset;
+            }
+        });
+        for (int i = best.length - 2; i >= 0; i--) {
+            best[i] = Math.min(best[i], best[i + 1]);
         }
-        try (DataOutputStream out = new DataOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(indexPath,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING)))) {
 
-            for (Map.Entry<Integer, Long> e : index.entrySet()) {
-                out.writeInt(e.getKey());
-                out.writeLong(e.getValue());
+        long[] bounds = new long[segments + 1];
+        int n = 0;
+        bounds[n++] = DataStore.HEADER_SIZE;
+        for (long b : best) {
+            if (b != Long.MAX_VALUE && b > bounds[n - 1] && b < end) {
+                bounds[n++] = b;
             }
         }
+        bounds[n++] = end;
+        return Arrays.copyOf(bounds, n);
     }
 
-    @Override
-    public void clear() throws IOException {
-        ensureOpen();
-        dataFile.setLength(0);  // очищаем .dat
-        index.clear();          // очищаем индекс в памяти
-        recordCount = 0;
-        saveIndex();            // и на диске
+    /** Совпадение, найденное при параллельном сканировании */
+    private static final class Match {
+        final long offset;
+        final Product product;
+
+        Match(long offset, Product product) {
+            this.offset = offset;
+            this.product = product;
+        }
     }
 
+    /* ==================== Потоковое чтение ==================== */
+
+    /**
+     * Все записи потоком, без сборки в список: записи читаются пачками
+     * под блокировкой чтения, между пачками писатели не ждут.
+     * Обход слабо согласован — запись, изменённая после того, как её уже
+     * выдали, может встретиться ещё раз (новая версия дописана в конец).
+     * Если .dat переписан во время обхода (compact, clear, restore),
+     * следующая пачка бросит ConcurrentModificationException.
+     * Поток нужно закрыть (try-with-resources).
+     */
     @Override
-    public void delete() throws IOException {
-        close();
-        Files.deleteIfExists(dataPath);
-        Files.deleteIfExists(indexPath);
+    public Stream<Product> streamAll() throws IOException {
+        return openStream(new ScanCursor(RecordFilter.LIVE));
     }
 
+    /** Записи с полем, равным value, потоком (см. streamAll) */
     @Override
-    public void close() throws IOException {
-        if (dataFile != null) {
-            saveIndex();
-            dataFile.close();
-            dataFile = null;
+    public Stream<Product> streamByField(String fieldName, Object value) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if ("product_id".equals(fieldName)) {
+                long offset = index.get(toInt(value));
+                return openStream(new OffsetCursor(offset == IntLongHashMap.NO_VALUE
+                        ? new long[0] : new long[]{offset}));
+            }
+            SecondaryIndex si = secondaryIndexes.get(fieldName);
+            if (si != null) {
+                return openStream(new OffsetCursor(si.find(value)));
+            }
+            return openStream(new ScanCursor(fieldFilter(fieldName, value, dataFile.dictionary())));
+        } finally {
+            lock.readLock().unlock();
         }
-        open = false;
     }
 
-    private void ensureOpen() throws IOException {
-        if (!open || dataFile == null) {
-            throw new IOException("Database is not open");
-        }
+    private Stream<Product> openStream(Cursor cursor) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
     }
 
-    /* ==================== Операции с записями ==================== */
-
-    @Override
-    public synchronized boolean insert(Product record) throws IOException {
-        ensureOpen();
-        int id = record.getProduct_id();
+    /** Итератор, подкачивающий записи пачками */
+    private abstract class Cursor implements Iterator<Product> {
+
+        private final int startGeneration;
+        protected final ArrayDeque<Product> buffer = new ArrayDeque<>();
+        private boolean exhausted;
+        private boolean closed;
+
+        Cursor() throws IOException {
+            lock.readLock().lock();
+            try {
+                ensureOpen();
+                startGeneration = generation;
+            } finally {
+                lock.readLock().unlock();
+            }
+            openCursors.incrementAndGet();
+        }
 
-        // проверка уникальности ключа
-        if (index.containsKey(id)) {
-            return false;
+        /** Дочитывает следующую пачку в buffer (под блокировкой чтения), false — дальше пусто */
+        abstract boolean fetch() throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            while (buffer.isEmpty() && !exhausted && !closed) {
+                lock.readLock().lock();
+                try {
+                    ensureOpen();
+                    if (generation != startGeneration) {
+                        throw new ConcurrentModificationException(
+                                "Data file was rewritten during iteration");
+                    }
+                    exhausted = !fetch();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            return !buffer.isEmpty();
         }
 
-        long offset = dataFile.length();   // пишем в конец файла
-        dataFile.seek(offset);
-        dataFile.writeBoolean(false);      // флаг deleted = false
-        writeProduct(dataFile, record);
+        @Override
+        public Product next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.poll();
+        }
 
-        index.put(id, offset);
-        recordCount++;
-        return true;
+        void close() {
+            if (!closed) {
+                closed = true;
+                buffer.clear();
+                openCursors.decrementAndGet();
+            }
+        }
     }
 
-    @Override
-    public synchronized boolean updateByKey(Integer key, Product newRecord) throws IOException {
-        ensureOpen();
-        Long oldOffset = index.get(key);
-        if (oldOffset == null) {
-            return false;
+    /** Последовательный проход по .dat блоками по READ_AHEAD_BYTES */
+    private class ScanCursor extends Cursor {
+
+        private final RecordFilter filter;
+        private long position = DataStore.HEADER_SIZE;
+
+        ScanCursor(RecordFilter filter) throws IOException {
+            this.filter = filter;
+        }
+
+        @Override
+        boolean fetch() throws IOException {
+            long end = dataFile.length();
+            if (position >= end) {
+                return false;
+            }
+            position = dataFile.scan(position, Math.min(end, position + READ_AHEAD_BYTES),
+                    filter, (offset, deleted, p) -> buffer.add(p));
+            return position < end;
         }
+    }
 
-        // помечаем старую запись как удалённую
-        markDeleted(oldOffset);
-        index.remove(key);
+    /** Чтение записей по заранее найденным смещениям (из индекса) */
+    private class OffsetCursor extends Cursor {
 
-        // гарантируем, что ключ у новой записи правильный
-        newRecord.setProduct_id(key);
+        private final long[] offsets;
+        private int next;
 
-        // дописываем новую запись в конец
-        long offset = dataFile.length();
-        dataFile.seek(offset);
-        dataFile.writeBoolean(false);
-        writeProduct(dataFile, newRecord);
+        OffsetCursor(long[] offsets) throws IOException {
+            this.offsets = offsets;
+        }
 
-        index.put(key, offset);
-        // recordCount не меняем: количество живых записей то же
-        return true;
+        @Override
+        boolean fetch() throws IOException {
+            int end = Math.min(offsets.length, next + READ_AHEAD_RECORDS);
+            for (; next < end; next++) {
+                Product p = dataFile.readAt(offsets[next]);
+                if (p != null) {
+                    buffer.add(p); // удалённые после поиска по индексу пропускаем
+                }
+            }
+            return next < offsets.length;
+        }
     }
 
-    @Override
-    public synchronized int deleteByKey(Integer key) throws IOException {
+    /* ==================== Уплотнение .dat (compaction) ==================== */
+
+    /**
+     * Переписывает живые записи в новый файл и подменяет им .dat.
+     * Копирование идёт без блокировок; эксклюзивная блокировка берётся только
+     * на короткую финальную фазу (догоняющее копирование хвоста и подмена файла),
+     * так что читатели и писатели ждут лишь её.
+     *
+     * @return true, если файл был переписан
+     */
+    public boolean compact() throws IOException {
         ensureOpen();
-        Long offset = index.remove(key);
-        if (offset == null) {
-            return 0;
+        awaitCompaction(); // ошибка фонового уплотнения сообщается здесь
+        compactionLock.lock();
+        try {
+            return compactNow();
+        } finally {
+            compactionLock.unlock();
         }
-        markDeleted(offset);
-        recordCount--;
-        return 1;
     }
 
-    @Override
-    public synchronized int deleteByField(String fieldName, Object value) throws IOException {
-        ensureOpen();
-        int deletedCount = 0;
+    /**
+     * Настройка автоматического уплотнения: запускается в фоне, когда удалённые
+     * записи занимают не меньше deadRatio файла и не меньше minDeadBytes байт.
+     * deadRatio <= 0 отключает автозапуск.
+     */
+    public void setAutoCompaction(double deadRatio, long minDeadBytes) {
+        this.autoCompactionRatio = deadRatio;
+        this.autoCompactionMinBytes = minDeadBytes;
+    }
+
+    /**
+     * Поиск и удаление по неиндексированному полю сканируют .dat параллельно,
+     * если файл не меньше minBytes. Long.MAX_VALUE отключает параллельный режим.
+     */
+    public void setParallelScanThreshold(long minBytes) {
+        this.parallelScanMinBytes = minBytes;
+    }
 
-        dataFile.seek(0);
-        long fileLength = dataFile.length();
-        while (dataFile.getFilePointer() < fileLength) {
-            long recordOffset = dataFile.getFilePointer();
-            boolean deleted = dataFile.readBoolean();
-            Product p = readProduct(dataFile);
+    /**
+     * Пределы кэша записей findByKey (LRU): число записей и примерный объём в байтах.
+     * 0 в любом из них отключает кэш.
+     */
+    public void setRecordCache(int maxEntries, long maxBytes) {
+        recordCache.resize(maxEntries, maxBytes);
+    }
 
-            if (!deleted && matchesField(p, fieldName, value)) {
-                markDeleted(recordOffset);
-                index.remove(p.getProduct_id());
-                deletedCount++;
+    /**
+     * Включает/выключает полнотекстовый индекс (searchText). Индекс занимает
+     * в памяти порядка 16 байт на каждое различное слово каждой записи;
+     * без него поиск по словам сканирует .dat. Включение на открытой БД
+     * строит индекс сканированием. По умолчанию выключен.
+     */
+    public void setFullTextIndexEnabled(boolean enabled) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (enabled == (textIndex != null)) {
+                return;
+            }
+            textIndex = enabled ? new TextIndex() : null;
+            if (open) {
+                if (enabled) {
+                    rebuildTextIndex();
+                }
+                saveSecondaryIndexes();
             }
+        } finally {
+            lock.writeLock().unlock();
         }
-        recordCount -= deletedCount;
-        return deletedCount;
     }
 
-    @Override
-    public Optional<Product> findByKey(Integer key) throws IOException {
-        ensureOpen();
-        Long offset = index.get(key);
-        if (offset == null) {
-            return Optional.empty();
+    /**
+     * Включает/выключает колоночную копию числовых полей (product_id, seller_id,
+     * price, article, stock_quantity): 32 байта на запись в памяти и файл .col.
+     * С ней find по числовым условиям без подходящего индекса и aggregate по числовым
+     * полям идут циклом по массивам вместо скана .dat. Включение на открытой БД
+     * строит колонки сканированием.
+     */
+    public void setColumnStoreEnabled(boolean enabled) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (enabled == (columns != null)) {
+                return;
+            }
+            columns = enabled ? new ColumnStore() : null;
+            if (open) {
+                if (enabled) {
+                    rebuildColumns();
+                }
+                saveColumns();
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
-        Product p = readAtOffset(offset);
-        return Optional.ofNullable(p);
     }
 
-    @Override
-    public List<Product> findByField(String fieldName, Object value) throws IOException {
-        ensureOpen();
-        List<Product> result = new ArrayList<>();
+    /** Счётчики попаданий, промахов и вытеснений кэша записей */
+    public CacheStats getCacheStats() {
+        return recordCache.stats();
+    }
 
-        // поиск по ключу — через индекс
-        if ("product_id".equals(fieldName)) {
-            Integer key = toInt(value);
-            return findByKey(key).map(List::of).orElseGet(List::of);
+    /**
+     * Степень сжатия .dat и затраты на распаковку блоков;
+     * в несжатых режимах степень 1 и блоков нет
+     */
+    public CompressionStats getCompressionStats() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return dataFile.compressionStats();
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        dataFile.seek(0);
-        long fileLength = dataFile.length();
-        while (dataFile.getFilePointer() < fileLength) {
-            boolean deleted = dataFile.readBoolean();
-            Product p = readProduct(dataFile);
-            if (!deleted && matchesField(p, fieldName, value)) {
-                result.add(p);
+    /** Сколько байт .dat занято удалёнными записями */
+    public long getDeadBytes() {
+        lock.readLock().lock();
+        try {
+            return deadBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean compactNow() throws IOException {
+        long copyEnd;
+        int startGeneration;
+        DataStore current;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if (deadBytes == 0) {
+                return false;
+            }
+            copyEnd = dataFile.length();
+            startGeneration = generation;
+            current = dataFile;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // 1. Копируем живые записи до copyEnd без блокировки. Несжатый файл читаем
+        //    отдельным дескриптором, сжатый — через current: вставки переписывают
+        //    его хвостовой блок, и каталог блоков верен только у этого экземпляра.
+        //    Новый файл пишется через DataStore в том же режиме со своим словарём
+        Path tmpPath = dataPath.resolveSibling(dataPath.getFileName() + ".compact");
+        Files.deleteIfExists(tmpPath); // остаток прерванного уплотнения
+        OffsetRemap moved = new OffsetRemap();
+        DataStore target = DataStore.open(tmpPath, storageMode);
+        boolean replaced = false;
+        try {
+            DataStore source = storageMode == StorageMode.COMPRESSED
+                    ? current : DataStore.open(dataPath, storageMode);
+            try {
+                List<Product> batch = new ArrayList<>();
+                List<Long> oldOffsets = new ArrayList<>();
+                source.scan(DataStore.HEADER_SIZE, copyEnd, RecordFilter.LIVE, (offset, deleted, p) -> {
+                    batch.add(p);
+                    oldOffsets.add(offset);
+                    if (batch.size() == COMPACTION_BATCH) {
+                        copyBatch(target, batch, oldOffsets, moved);
+                    }
+                });
+                copyBatch(target, batch, oldOffsets, moved);
+            } finally {
+                if (source != current) {
+                    source.close();
+                }
+            }
+            long newLength = target.length();
+
+            // 2. Догоняем изменения, сделанные за время копирования, и подменяем файл
+            lock.writeLock().lock();
+            try {
+                if (!open || generation != startGeneration) {
+                    // БД закрыли, очистили или уже переписали — результат не нужен
+                    return false;
+                }
+
+                // записи, удалённые/обновлённые во время копирования, помечаем и в новом файле
+                long newDeadBytes = 0;
+                for (int i = 0; i < moved.size(); i++) {
+                    if (index.get(moved.idAt(i)) != moved.oldOffsetAt(i)) {
+                        long start = moved.newOffsetAt(i);
+                        long end = i + 1 < moved.size() ? moved.newOffsetAt(i + 1) : newLength;
+                        target.markDeleted(start);
+                        newDeadBytes += end - start;
+                    }
+                }
+
+                // записи, дописанные после copyEnd
+                List<Product> added = new ArrayList<>();
+                List<Long> oldOffsets = new ArrayList<>();
+                dataFile.scan(copyEnd, dataFile.length(), RecordFilter.LIVE, (offset, deleted, p) -> {
+                    added.add(p);
+                    oldOffsets.add(offset);
+                });
+                copyBatch(target, added, oldOffsets, moved);
+                target.sync();
+                target.close();
+
+                dataFile.close();
+                try {
+                    try {
+                        Files.move(tmpPath, dataPath,
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(tmpPath, dataPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (IOException e) {
+                    // .dat остался прежним — открываем его снова, индексы к нему подходят
+                    try {
+                        dataFile = DataStore.open(dataPath, storageMode);
+                    } catch (IOException reopen) {
+                        open = false; // без .dat работать нельзя — до нового open()
+                        e.addSuppressed(reopen);
+                    }
+                    throw e;
+                }
+                replaced = true;
+                dataFile = DataStore.open(dataPath, storageMode);
+
+                // индексы указывают на старые смещения — переводим их на новые
+                index.replaceValues(moved::map);
+                for (SecondaryIndex si : secondaryIndexes.values()) {
+                    si.remapOffsets(moved);
+                }
+                if (textIndex != null) {
+                    textIndex.remapOffsets(moved);
+                }
+                if (columns != null) {
+                    columns.remapOffsets(moved);
+                }
+                deadBytes = newDeadBytes;
+                generation++;
+                saveIndex(); // смещения поменялись все — журнал тут бесполезен, пишем снимок
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            target.close(); // повторное закрытие ничего не делает
+            if (!replaced) {
+                Files.deleteIfExists(tmpPath);
             }
         }
-        return result;
     }
 
-    @Override
-    public List<Product> findAll() throws IOException {
-        ensureOpen();
-        List<Product> all = new ArrayList<>();
-        dataFile.seek(0);
-        long fileLength = dataFile.length();
-        while (dataFile.getFilePointer() < fileLength) {
-            boolean deleted = dataFile.readBoolean();
-            Product p = readProduct(dataFile);
-            if (!deleted) {
-                all.add(p);
+    /** Дописывает пачку записей в новый файл уплотнения и запоминает их новые смещения */
+    private static void copyBatch(DataStore target, List<Product> batch, List<Long> oldOffsets,
+                                  OffsetRemap moved) throws IOException {
+        long[] offsets = target.appendAll(batch);
+        for (int i = 0; i < offsets.length; i++) {
+            moved.add(batch.get(i).getProduct_id(), oldOffsets.get(i), offsets[i]);
+        }
+        batch.clear();
+        oldOffsets.clear();
+    }
+
+    /** Запускает уплотнение в фоне, если мёртвых байт стало слишком много */
+    private void scheduleAutoCompaction() throws IOException {
+        if (closing) {
+            return;
+        }
+        if (openCursors.get() > 0) {
+            return; // уплотнение сломало бы открытые потоки; проверим при следующем изменении
+        }
+        double ratio = autoCompactionRatio;
+        if (ratio <= 0 || deadBytes < autoCompactionMinBytes
+                || deadBytes < ratio * dataFile.length()) {
+            return;
+        }
+        if (pendingCompaction != null && (!pendingCompaction.isDone() || failed(pendingCompaction))) {
+            return; // ещё идёт или упало — ошибку сообщат close() или compact()
+        }
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ProductDao-compaction");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        pendingCompaction = compactionExecutor.submit(() -> {
+            if (!compactionLock.tryLock()) {
+                return false; // уже идёт ручное уплотнение
+            }
+            try {
+                return compactNow();
+            } finally {
+                compactionLock.unlock();
             }
+        });
+    }
+
+    /** Завершилось ли уже выполненное уплотнение ошибкой */
+    private static boolean failed(Future<?> done) {
+        try {
+            done.get();
+            return false;
+        } catch (ExecutionException | CancellationException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Дожидается фонового уплотнения (перед закрытием файлов) */
+    private void awaitCompaction() throws IOException {
+        Future<?> pending;
+        lock.writeLock().lock();
+        try {
+            pending = pendingCompaction;
+            pendingCompaction = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compaction");
+        } catch (ExecutionException e) {
+            throw new IOException("Compaction failed", e.getCause());
         }
-        return all;
     }
 
     /*  backup / restore / export */
 
     @Override
     public void backup(Path backupDir) throws IOException {
-        ensureOpen();
         Files.createDirectories(backupDir);
 
-        // Сначала синхронизируем .idx на диске с актуальной картой index
-        saveIndex(); // или просто save(), если он только индекс пишет
+        // Сначала синхронизируем индексы на диске с актуальными картами в памяти,
+        // затем копируем под блокировкой чтения: читатели работают, писатели ждут
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            commitIndex();
+            saveSecondaryIndexes();
+            saveColumns();
+            lock.readLock().lock(); // понижение блокировки до чтения
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            copyToBackup(backupDir);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
+    private void copyToBackup(Path backupDir) throws IOException {
         Files.copy(dataPath, backupDir.resolve(dataPath.getFileName()),
                 StandardCopyOption.REPLACE_EXISTING);
 
-        if (Files.exists(indexPath)) {
-            Files.copy(indexPath, backupDir.resolve(indexPath.getFileName()),
-                    StandardCopyOption.REPLACE_EXISTING);
+        for (Path path : List.of(indexPath, indexJournal.getJournalPath())) {
+            Path target = backupDir.resolve(path.getFileName());
+            if (Files.exists(path)) {
+                Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(target); // журнал от прошлого backup-а не нужен
+            }
+        }
+        for (Path path : List.of(secondaryIndexPath, columnPath)) {
+            if (Files.exists(path)) {
+                Files.copy(path, backupDir.resolve(path.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
         }
     }
 
 
     @Override
     public void restore(Path backupDir) throws IOException {
-        close(); // внутри у тебя уже saveIndex()
+        close(); // внутри фиксируется журнал индекса
 
         Path backupData = backupDir.resolve(dataPath.getFileName());
         Path backupIdx  = backupDir.resolve(indexPath.getFileName());
+        Path backupSidx = backupDir.resolve(secondaryIndexPath.getFileName());
+        Path journalPath = indexJournal.getJournalPath();
+        Path backupJournal = backupDir.resolve(journalPath.getFileName());
 
         Files.copy(backupData, dataPath, StandardCopyOption.REPLACE_EXISTING);
 
@@ -324,6 +1847,22 @@ public class ProductDao implements Database<Product, Integer> {
         } else {
             Files.deleteIfExists(indexPath); // чтобы потом пересобрать индекс из .dat
         }
+        if (Files.exists(backupJournal)) {
+            Files.copy(backupJournal, journalPath, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(journalPath); // иначе он проиграется поверх чужого снимка
+        }
+        if (Files.exists(backupSidx)) {
+            Files.copy(backupSidx, secondaryIndexPath, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(secondaryIndexPath);
+        }
+        Path backupColumns = backupDir.resolve(columnPath.getFileName());
+        if (Files.exists(backupColumns)) {
+            Files.copy(backupColumns, columnPath, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(columnPath);
+        }
 
         open(); // снова открываем и перечитываем индекс/recordCount
     }
@@ -332,50 +1871,76 @@ public class ProductDao implements Database<Product, Integer> {
 
     @Override
     public void exportToXlsx(Path targetFile) throws IOException {
+        exportToXlsx(targetFile, TaskMonitor.NONE);
+    }
+
+    /**
+     * Экспорт с прогрессом (строки из getRecordCount) и отменой: при отмене бросается
+     * CancellationException, targetFile не создаётся — книга пишется в него только в конце.
+     */
+    @Override
+    public void exportToXlsx(Path targetFile, TaskMonitor monitor) throws IOException {
         ensureOpen();
+        long total = getRecordCount();
 
-        Workbook workbook = new XSSFWorkbook();
+        // SXSSF держит в памяти только последние EXPORT_ROW_WINDOW строк,
+        // остальные сразу уходят во временный файл
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
         try {
-            Sheet sheet = workbook.createSheet("Products");
-
-            String[] headers = {
-                    "product_id",
-                    "seller_id",
-                    "name",
-                    "price",
-                    "brand",
-                    "article",
-                    "stock_quantity",
-                    "category",
-                    "description"
-            };
-
-            Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
+            // ширина колонок — по первым EXPORT_SAMPLE_ROWS строкам вместо autoSizeColumn,
+            // которому нужен весь лист в памяти
+            int[] maxChars = new int[EXPORT_HEADERS.length];
+            for (int i = 0; i < EXPORT_HEADERS.length; i++) {
+                maxChars[i] = EXPORT_HEADERS[i].length();
             }
 
-            java.util.List<Product> products = findAll();
-
-            int rowNum = 1;
-            for (Product p : products) {
-                Row row = sheet.createRow(rowNum++);
-
-                int col = 0;
-                row.createCell(col++).setCellValue(p.getProduct_id());
-                row.createCell(col++).setCellValue(p.getSeller_id());
-                row.createCell(col++).setCellValue(nullToEmpty(p.getName()));
-                row.createCell(col++).setCellValue(p.getPrice());
-                row.createCell(col++).setCellValue(nullToEmpty(p.getBrand()));
-                row.createCell(col++).setCellValue(p.getArticle());
-                row.createCell(col++).setCellValue(p.getStock_quantity());
-                row.createCell(col++).setCellValue(nullToEmpty(p.getCategory()));
-                row.createCell(col).setCellValue(nullToEmpty(p.getDescription()));
+            Sheet sheet = null;
+            int rowNum = 0;
+            int sheetCount = 0;
+            long sampled = 0;
+            long exported = 0;
+            try (Stream<Product> products = streamAll()) {
+                Iterator<Product> it = products.iterator();
+                while (it.hasNext()) {
+                    if (exported++ % EXPORT_PROGRESS_ROWS == 0) {
+                        checkCancelled(monitor);
+                        monitor.progress(exported - 1, total);
+                    }
+                    if (sheet == null || rowNum == EXPORT_MAX_ROWS) {
+                        // на листе не больше 1 048 576 строк — дальше новый лист
+                        sheet = createExportSheet(workbook, ++sheetCount, maxChars);
+                        rowNum = 1;
+                    }
+                    Product p = it.next();
+                    Row row = sheet.createRow(rowNum++);
+
+                    int col = 0;
+                    row.createCell(col++).setCellValue(p.getProduct_id());
+                    row.createCell(col++).setCellValue(p.getSeller_id());
+                    row.createCell(col++).setCellValue(nullToEmpty(p.getName()));
+                    row.createCell(col++).setCellValue(p.getPrice());
+                    row.createCell(col++).setCellValue(nullToEmpty(p.getBrand()));
+                    row.createCell(col++).setCellValue(p.getArticle());
+                    row.createCell(col++).setCellValue(p.getStock_quantity());
+                    row.createCell(col++).setCellValue(nullToEmpty(p.getCategory()));
+                    row.createCell(col).setCellValue(nullToEmpty(p.getDescription()));
+
+                    if (sampled++ < EXPORT_SAMPLE_ROWS) {
+                        for (int i = 0; i < EXPORT_HEADERS.length; i++) {
+                            maxChars[i] = Math.max(maxChars[i], cellText(row.getCell(i)).length());
+                        }
+                        if (sampled == EXPORT_SAMPLE_ROWS) {
+                            setColumnWidths(sheet, maxChars);
+                        }
+                    }
+                }
             }
-
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
+            if (sheet == null) {
+                sheet = createExportSheet(workbook, 1, maxChars); // пустая БД — только заголовок
+            }
+            if (sampled < EXPORT_SAMPLE_ROWS) {
+                setColumnWidths(sheet, maxChars);
             }
 
             if (targetFile.getParent() != null) {
@@ -385,10 +1950,50 @@ public class ProductDao implements Database<Product, Integer> {
                 workbook.write(out);
             }
         } finally {
+            workbook.dispose(); // удаляем временные файлы SXSSF
             workbook.close();
         }
     }
 
+    /**
+     * Импорт товаров из XLSX (потоковое SAX-чтение) или CSV.
+     * Строки проверяются Product.getValidationError на пуле потоков и пишутся
+     * пачками insertAll; строки с ошибками и занятыми ID попадают в отчёт.
+     */
+    @Override
+    public ImportResult importFrom(Path sourceFile) throws IOException {
+        ensureOpen();
+        return new ProductImporter(this).run(sourceFile);
+    }
+
+    private static Sheet createExportSheet(SXSSFWorkbook workbook, int number, int[] maxChars) {
+        Sheet sheet = workbook.createSheet(number == 1 ? "Products" : "Products " + number);
+        Row headerRow = sheet.createRow(0);
+        for (int i = 0; i < EXPORT_HEADERS.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(EXPORT_HEADERS[i]);
+        }
+        if (number > 1) {
+            setColumnWidths(sheet, maxChars); // выборка уже сделана на первом листе
+        }
+        return sheet;
+    }
+
+    private static void setColumnWidths(Sheet sheet, int[] maxChars) {
+        for (int i = 0; i < maxChars.length; i++) {
+            // ширина в 1/256 символа, запас в 2 символа; Excel не даёт больше 255
+            sheet.setColumnWidth(i, Math.min(maxChars[i] + 2, 255) * 256);
+        }
+    }
+
+    private static String cellText(Cell cell) {
+        if (cell.getCellType() == CellType.NUMERIC) {
+            double v = cell.getNumericCellValue();
+            return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+        }
+        return cell.getStringCellValue();
+    }
+
     private static String nullToEmpty(String s) {
         return s == null ? "" : s;
     }
@@ -396,6 +2001,47 @@ public class ProductDao implements Database<Product, Integer> {
 
 
 
+    /* ==================== События об изменениях ==================== */
+
+    @Override
+    public void addChangeListener(DataChangeListener<Product, Integer> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(DataChangeListener<Product, Integer> listener) {
+        listeners.remove(listener);
+    }
+
+    /** Событие о вставке/обновлении; позиция берётся из порядка ключей (вызывать после keyOrder.add) */
+    private void fireChange(DataChangeEvent.Type type, int key, Product record) {
+        if (!listeners.isEmpty()) {
+            fire(new DataChangeEvent<>(type, key, record, keyOrder.indexOf(key), recordCount));
+        }
+    }
+
+    /** Запись удалена: убирает ключ из порядка ключей, уменьшает recordCount и сообщает подписчикам */
+    private void keyDeleted(int key) {
+        int row = listeners.isEmpty() ? -1 : keyOrder.indexOf(key);
+        keyOrder.remove(key);
+        recordCount--;
+        if (!listeners.isEmpty()) {
+            fire(new DataChangeEvent<>(DataChangeEvent.Type.DELETED, key, null, row, recordCount));
+        }
+    }
+
+    private void fireReloaded() {
+        if (!listeners.isEmpty()) {
+            fire(new DataChangeEvent<>(DataChangeEvent.Type.RELOADED, null, null, -1, recordCount));
+        }
+    }
+
+    private void fire(DataChangeEvent<Product, Integer> event) {
+        for (DataChangeListener<Product, Integer> l : listeners) {
+            l.dataChanged(event);
+        }
+    }
+
     /* ==================== Реализация доп. методов интерфейса ==================== */
 
     @Override
@@ -405,6 +2051,7 @@ public class ProductDao implements Database<Product, Integer> {
 
     @Override
     public int getRecordCount() {
+        // без блокировки: строка состояния GUI не должна ждать долгую запись
         return recordCount;
     }
 
@@ -413,90 +2060,119 @@ public class ProductDao implements Database<Product, Integer> {
         return dataPath;
     }
 
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
     /* ==================== Вспомогательные методы ==================== */
 
-    private void markDeleted(long offset) throws IOException {
-        long currentPos = dataFile.getFilePointer(); // запоминаем, где были
-        dataFile.seek(offset);
-        dataFile.writeBoolean(true);                 // ставим deleted = true
-        dataFile.seek(currentPos);                   // возвращаемся туда, где шёл цикл
+    /** Добавляет живую запись во все индексы */
+    private void indexRecord(Product p, long offset) {
+        index.put(p.getProduct_id(), offset);
+        indexJournal.logPut(p.getProduct_id(), offset);
+        for (SecondaryIndex si : secondaryIndexes.values()) {
+            si.add(p, offset);
+        }
+        if (textIndex != null) {
+            textIndex.add(p, offset);
+        }
+        if (columns != null) {
+            columns.add(p, offset);
+        }
     }
 
-    private Product readAtOffset(long offset) throws IOException {
-        long currentPos = dataFile.getFilePointer();
-        try {
-            dataFile.seek(offset);
-            boolean deleted = dataFile.readBoolean();
-            Product p = readProduct(dataFile);
-            if (deleted) return null;
-            return p;
-        } finally {
-            dataFile.seek(currentPos); // чтобы не ломать другие операции чтения
+    /** Убирает запись из всех индексов */
+    private void unindexRecord(Product p, long offset) {
+        indexRemove(p.getProduct_id());
+        for (SecondaryIndex si : secondaryIndexes.values()) {
+            si.remove(p, offset);
+        }
+        if (textIndex != null) {
+            textIndex.remove(p, offset);
+        }
+        if (columns != null) {
+            columns.remove(offset);
         }
     }
 
-
-    /** Записываем запись Product в файл после флага deleted */
-    private static void writeProduct(RandomAccessFile file, Product p) throws IOException {
-        file.writeInt(p.getProduct_id());
-        file.writeInt(p.getSeller_id());
-        file.writeDouble(p.getPrice());
-        file.writeInt(p.getArticle());
-        file.writeInt(p.getStock_quantity());
-
-        file.writeUTF(nonNull(p.getName()));
-        file.writeUTF(nonNull(p.getBrand()));
-        file.writeUTF(nonNull(p.getCategory()));
-        file.writeUTF(nonNull(p.getDescription()));
+    /** Удаление из первичного индекса с записью в журнал (и из кэша записей) */
+    private void indexRemove(int id) {
+        recordCache.invalidate(id);
+        if (index.remove(id) != IntLongHashMap.NO_VALUE) {
+            indexJournal.logRemove(id);
+        }
     }
 
-    /** Читаем запись Product из файла после флага deleted */
-    private static Product readProduct(RandomAccessFile file) throws IOException {
-        Product p = new Product();
-        p.setProduct_id(file.readInt());
-        p.setSeller_id(file.readInt());
-        p.setPrice(file.readDouble());
-        p.setArticle(file.readInt());
-        p.setStock_quantity(file.readInt());
-
-        p.setName(file.readUTF());
-        p.setBrand(file.readUTF());
-        p.setCategory(file.readUTF());
-        p.setDescription(file.readUTF());
-        return p;
+    private void clearIndexes() {
+        recordCache.clear();
+        keyOrder.invalidate();
+        index.clear();
+        indexJournal.discardPending();
+        for (SecondaryIndex si : secondaryIndexes.values()) {
+            si.clear();
+        }
+        if (textIndex != null) {
+            textIndex.clear();
+        }
+        if (columns != null) {
+            columns.clear();
+        }
     }
 
-    private static String nonNull(String s) {
-        return s == null ? "" : s;
+    /** Файл-спутник индекса: products.idx -> products.sidx */
+    private static Path companionPath(Path indexPath, String extension) {
+        String name = indexPath.getFileName().toString();
+        if (name.endsWith(".idx")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return indexPath.resolveSibling(name + extension);
     }
 
-    private static boolean matchesField(Product p, String fieldName, Object value) {
-        String vStr = value == null ? null : value.toString();
+    /**
+     * Фильтр "поле равно значению", проверяемый по байтам записи в буфере:
+     * для несовпавших записей строки не декодируются. Удалённые записи не проходят.
+     */
+    private static RecordFilter fieldFilter(String fieldName, Object value, StringDictionary dict) {
+        if (value == null) {
+            return (buf, pos) -> false;
+        }
         switch (fieldName) {
             case "product_id":
-                return p.getProduct_id() == toInt(value);
+                return intFieldFilter(DataStore.ID_POS, toInt(value));
             case "seller_id":
-                return p.getSeller_id() == toInt(value);
+                return intFieldFilter(DataStore.SELLER_POS, toInt(value));
             case "article":
-                return p.getArticle() == toInt(value);
+                return intFieldFilter(DataStore.ARTICLE_POS, toInt(value));
             case "stock_quantity":
-                return p.getStock_quantity() == toInt(value);
+                return intFieldFilter(DataStore.STOCK_POS, toInt(value));
+            case "price": {
+                double price = toDouble(value);
+                return (buf, pos) -> buf.get(pos) == 0
+                        && Double.compare(buf.getDouble(pos + DataStore.PRICE_POS), price) == 0;
+            }
             case "name":
-                return Objects.equals(p.getName(), vStr);
+                return stringFieldFilter(DataStore.NAME, value.toString(), dict);
             case "brand":
-                return Objects.equals(p.getBrand(), vStr);
+                return stringFieldFilter(DataStore.BRAND, value.toString(), dict);
             case "category":
-                return Objects.equals(p.getCategory(), vStr);
+                return stringFieldFilter(DataStore.CATEGORY, value.toString(), dict);
             case "description":
-                return Objects.equals(p.getDescription(), vStr);
-            case "price":
-                return Double.compare(p.getPrice(), toDouble(value)) == 0;
+                return stringFieldFilter(DataStore.DESCRIPTION, value.toString(), dict);
             default:
                 // неизвестное поле — ни с чем не совпадает
-                return false;
+                return (buf, pos) -> false;
         }
     }
 
+    private static RecordFilter intFieldFilter(int fieldPos, int value) {
+        return (buf, pos) -> buf.get(pos) == 0 && buf.getInt(pos + fieldPos) == value;
+    }
+
+    private static RecordFilter stringFieldFilter(int field, String value, StringDictionary dict) {
+        RecordFilter equals = DataStore.stringEquals(field, value, dict);
+        return (buf, pos) -> buf.get(pos) == 0 && equals.test(buf, pos);
+    }
+
     private static int toInt(Object o) {
         if (o instanceof Number) {
             return ((Number) o).intValue();
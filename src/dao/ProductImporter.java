@@ -0,0 +1,293 @@
+package dao;
+
+import model.Product;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Конвейер импорта XLSX/CSV в базу:
+ * чтение строк (поток вызывающего) -> разбор и проверка getValidationError
+ * пачками на пуле потоков -> запись пачками insertAll (снова поток вызывающего,
+ * в порядке файла). Пачек в работе не больше двух на поток пула,
+ * так что память не зависит от размера файла.
+ *
+ * Первая строка листа считается заголовком, если в ней есть имена колонок
+ * экспорта (product_id, name, ...); иначе колонки идут в порядке экспорта.
+ */
+class ProductImporter implements RowHandler {
+
+    /** Колонки в порядке экспорта exportToXlsx */
+    private static final String[] COLUMNS = ProductDao.EXPORT_HEADERS;
+
+    private static final int VALIDATION_CHUNK = 1000;
+    private static final int WRITE_BATCH = 10_000;
+    private static final int MAX_REPORTED_REJECTS = 10_000;
+
+    private final Database<Product, Integer> db;
+    private final ExecutorService pool;
+    private final int maxInFlight;
+    private final ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+
+    private String sheetName;
+    private boolean headerExpected;
+    private int[] columnOf = defaultColumns(); // индекс поля COLUMNS -> колонка файла
+
+    private List<List<String>> rows = new ArrayList<>(VALIDATION_CHUNK);
+    private int[] rowNumbers = new int[VALIDATION_CHUNK];
+
+    private final List<Product> toWrite = new ArrayList<>(WRITE_BATCH);
+    private final List<String> toWriteSheets = new ArrayList<>(WRITE_BATCH);
+    private final List<Integer> toWriteRows = new ArrayList<>(WRITE_BATCH);
+
+    private long rowsRead;
+    private long imported;
+    private long rejectedCount;
+    private final List<ImportResult.RejectedRow> rejected = new ArrayList<>();
+
+    ProductImporter(Database<Product, Integer> db) {
+        this.db = db;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.maxInFlight = threads * 2;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ProductDao-import");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Импорт файла: формат определяется по расширению (.xlsx или .csv) */
+    ImportResult run(Path file) throws IOException {
+        long start = System.nanoTime();
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        try {
+            if (name.endsWith(".xlsx")) {
+                XlsxRowReader.read(file, this);
+            } else if (name.endsWith(".csv") || name.endsWith(".txt")) {
+                CsvRowReader.read(file, this);
+            } else {
+                throw new IOException("Unsupported import format: " + file.getFileName());
+            }
+            submitChunk();
+            while (!inFlight.isEmpty()) {
+                accept(await(inFlight.poll()));
+            }
+            flushWrites();
+        } finally {
+            pool.shutdownNow();
+        }
+        return new ImportResult(rowsRead, imported, rejectedCount, rejected, System.nanoTime() - start);
+    }
+
+    /* ==================== Чтение ==================== */
+
+    @Override
+    public void startSheet(String sheetName) {
+        this.sheetName = sheetName;
+        this.headerExpected = true;
+        this.columnOf = defaultColumns();
+    }
+
+    @Override
+    public void row(int rowNumber, List<String> cells) throws IOException {
+        if (headerExpected) {
+            headerExpected = false;
+            int[] header = headerColumns(cells);
+            if (header != null) {
+                columnOf = header;
+                return;
+            }
+        }
+        rowsRead++;
+        rowNumbers[rows.size()] = rowNumber;
+        rows.add(cells);
+        if (rows.size() == VALIDATION_CHUNK) {
+            submitChunk();
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (inFlight.size() >= maxInFlight) {
+            accept(await(inFlight.poll())); // ждём самую старую пачку — порядок сохраняется
+        }
+        List<List<String>> chunkRows = rows;
+        int[] chunkNumbers = rowNumbers;
+        int[] columns = columnOf;
+        String sheet = sheetName;
+        inFlight.add(pool.submit(() -> validate(sheet, chunkRows, chunkNumbers, columns)));
+        rows = new ArrayList<>(VALIDATION_CHUNK);
+        rowNumbers = new int[VALIDATION_CHUNK];
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Import validation failed", e.getCause());
+        }
+    }
+
+    /* ==================== Проверка (на пуле) ==================== */
+
+    /** Разобранная и проверенная пачка строк */
+    private static class Chunk {
+        final String sheet;
+        final List<Product> products = new ArrayList<>();
+        final List<Integer> productRows = new ArrayList<>();
+        final List<ImportResult.RejectedRow> rejected = new ArrayList<>();
+
+        Chunk(String sheet) {
+            this.sheet = sheet;
+        }
+    }
+
+    private static Chunk validate(String sheet, List<List<String>> rows, int[] rowNumbers, int[] columns) {
+        Chunk chunk = new Chunk(sheet);
+        for (int i = 0; i < rows.size(); i++) {
+            String error;
+            Product p = null;
+            try {
+                p = toProduct(rows.get(i), columns);
+                error = p.getValidationError();
+            } catch (NumberFormatException | ArithmeticException e) {
+                error = e.getMessage();
+            }
+            if (error == null) {
+                chunk.products.add(p);
+                chunk.productRows.add(rowNumbers[i]);
+            } else {
+                chunk.rejected.add(new ImportResult.RejectedRow(sheet, rowNumbers[i], error));
+            }
+        }
+        return chunk;
+    }
+
+    private static Product toProduct(List<String> cells, int[] columns) {
+        Product p = new Product();
+        p.setProduct_id(parseInt(cells, columns, 0));
+        p.setSeller_id(parseInt(cells, columns, 1));
+        p.setName(text(cells, columns, 2));
+        p.setPrice(parseDouble(cells, columns, 3));
+        p.setBrand(text(cells, columns, 4));
+        p.setArticle(parseInt(cells, columns, 5));
+        p.setStock_quantity(parseInt(cells, columns, 6));
+        p.setCategory(text(cells, columns, 7));
+        p.setDescription(text(cells, columns, 8));
+        return p;
+    }
+
+    private static String text(List<String> cells, int[] columns, int field) {
+        int col = columns[field];
+        return col >= 0 && col < cells.size() ? cells.get(col).trim() : "";
+    }
+
+    private static int parseInt(List<String> cells, int[] columns, int field) {
+        String s = text(cells, columns, field);
+        if (s.isEmpty()) {
+            return 0; // пустое значение отклонит getValidationError
+        }
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            try {
+                // XLSX хранит числа как double: "123.0", "1.0E7"
+                return new BigDecimal(s.replace(',', '.')).intValueExact();
+            } catch (NumberFormatException | ArithmeticException e2) {
+                throw new NumberFormatException("Колонка " + COLUMNS[field] + ": не целое число '" + s + "'");
+            }
+        }
+    }
+
+    private static double parseDouble(List<String> cells, int[] columns, int field) {
+        String s = text(cells, columns, field);
+        if (s.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(s.replace(',', '.').replace(" ", ""));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Колонка " + COLUMNS[field] + ": не число '" + s + "'");
+        }
+    }
+
+    /* ==================== Запись ==================== */
+
+    private void accept(Chunk chunk) throws IOException {
+        for (ImportResult.RejectedRow r : chunk.rejected) {
+            reject(r);
+        }
+        for (int i = 0; i < chunk.products.size(); i++) {
+            toWrite.add(chunk.products.get(i));
+            toWriteSheets.add(chunk.sheet);
+            toWriteRows.add(chunk.productRows.get(i));
+        }
+        if (toWrite.size() >= WRITE_BATCH) {
+            flushWrites();
+        }
+    }
+
+    private void flushWrites() throws IOException {
+        if (toWrite.isEmpty()) {
+            return;
+        }
+        BatchResult result = db.insertAll(toWrite);
+        for (int i = 0; i < result.size(); i++) {
+            if (result.getOutcome(i) == BatchResult.Outcome.DUPLICATE_KEY) {
+                reject(new ImportResult.RejectedRow(toWriteSheets.get(i), toWriteRows.get(i),
+                        "Товар с ID " + toWrite.get(i).getProduct_id() + " уже есть"));
+            } else {
+                imported++;
+            }
+        }
+        toWrite.clear();
+        toWriteSheets.clear();
+        toWriteRows.clear();
+    }
+
+    private void reject(ImportResult.RejectedRow row) {
+        rejectedCount++;
+        if (rejected.size() < MAX_REPORTED_REJECTS) {
+            rejected.add(row);
+        }
+    }
+
+    /* ==================== Колонки ==================== */
+
+    private static int[] defaultColumns() {
+        int[] columns = new int[COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        return columns;
+    }
+
+    /** Колонки по строке заголовка или null, если это не заголовок */
+    private static int[] headerColumns(List<String> cells) {
+        int[] columns = new int[COLUMNS.length];
+        Arrays.fill(columns, -1);
+        boolean found = false;
+        for (int col = 0; col < cells.size(); col++) {
+            String name = cells.get(col).trim().toLowerCase(Locale.ROOT);
+            for (int field = 0; field < COLUMNS.length; field++) {
+                if (COLUMNS[field].equals(name)) {
+                    columns[field] = col;
+                    found = true;
+                }
+            }
+        }
+        return found ? columns : null;
+    }
+}
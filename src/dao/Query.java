@@ -0,0 +1,249 @@
+package dao;
+
+import model.Product;
+
+import java.util.*;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+
+/**
+ * Условие поиска по полям Product: сравнения полей с константами,
+ * соединённые AND / OR. Строится фабриками:
+ *
+ *   Query.and(Query.eq("category", "Обувь"), Query.eq("brand", "Nike"), Query.gt("stock_quantity", 0))
+ *
+ * Значения сразу приводятся к типу поля (строки из GUI тоже подходят),
+ * неизвестное поле — IllegalArgumentException. Строки сравниваются
+ * с учётом регистра. Выполняет Database.find, план показывает Database.explain.
+ */
+public abstract class Query {
+
+    Query() {
+    }
+
+    public static Query eq(String field, Object value) {
+        return new Condition(field, Condition.Kind.EQ, value, true, value, true);
+    }
+
+    /** from <= field <= to; null — граница не задана */
+    public static Query range(String field, Object from, Object to) {
+        return new Condition(field, Condition.Kind.RANGE, from, true, to, true);
+    }
+
+    public static Query gt(String field, Object value) {
+        return new Condition(field, Condition.Kind.RANGE, value, false, null, false);
+    }
+
+    public static Query ge(String field, Object value) {
+        return new Condition(field, Condition.Kind.RANGE, value, true, null, false);
+    }
+
+    public static Query lt(String field, Object value) {
+        return new Condition(field, Condition.Kind.RANGE, null, false, value, false);
+    }
+
+    public static Query le(String field, Object value) {
+        return new Condition(field, Condition.Kind.RANGE, null, false, value, true);
+    }
+
+    /** Строковое поле начинается с prefix */
+    public static Query prefix(String field, String prefix) {
+        return new Condition(field, Condition.Kind.PREFIX, prefix, true, null, false);
+    }
+
+    public static Query and(Query... parts) {
+        return new Junction(true, parts);
+    }
+
+    public static Query or(Query... parts) {
+        return new Junction(false, parts);
+    }
+
+    /** Подходит ли запись */
+    public abstract boolean test(Product p);
+
+    /**
+     * То же условие по байтам записи файла со словарём dict, без разбора
+     * в Product (флаг deleted не проверяет)
+     */
+    abstract RecordFilter filter(StringDictionary dict);
+
+    /** Сравнение одного поля с константой (или диапазоном, или префиксом) */
+    static final class Condition extends Query {
+
+        enum Kind {
+            EQ,
+            RANGE,
+            PREFIX
+        }
+
+        final String field;
+        final Kind kind;
+        // для EQ from == to, для PREFIX from — префикс; null — граница не задана
+        final Object from;
+        final boolean fromInclusive;
+        final Object to;
+        final boolean toInclusive;
+
+        private Condition(String field, Kind kind, Object from, boolean fromInclusive,
+                          Object to, boolean toInclusive) {
+            SecondaryIndex.KeyType type = SecondaryIndex.keyType(Objects.requireNonNull(field, "field"));
+            if (kind != Kind.RANGE && from == null) {
+                throw new IllegalArgumentException("Value is required: " + field);
+            }
+            if (kind == Kind.PREFIX && type != SecondaryIndex.KeyType.STRING) {
+                throw new IllegalArgumentException("Prefix search needs a text field: " + field);
+            }
+            this.field = field;
+            this.kind = kind;
+            this.from = from == null ? null : SecondaryIndex.normalize(field, from);
+            this.fromInclusive = fromInclusive;
+            this.to = to == null ? null : SecondaryIndex.normalize(field, to);
+            this.toInclusive = toInclusive;
+        }
+
+        @Override
+        public boolean test(Product p) {
+            Object value = SecondaryIndex.valueOf(p, field);
+            if (kind == Kind.PREFIX) {
+                return ((String) value).startsWith((String) from);
+            }
+            return inRange(value);
+        }
+
+        private boolean inRange(Object value) {
+            if (from != null) {
+                int c = SecondaryIndex.compare(value, from);
+                if (c < 0 || (c == 0 && !fromInclusive)) {
+                    return false;
+                }
+            }
+            if (to != null) {
+                int c = SecondaryIndex.compare(value, to);
+                return c < 0 || (c == 0 && toInclusive);
+            }
+            return true;
+        }
+
+        @Override
+        RecordFilter filter(StringDictionary dict) {
+            switch (SecondaryIndex.keyType(field)) {
+                case INT: {
+                    int at = DataStore.numberPosition(field);
+                    IntPredicate test = intTest();
+                    return (buf, pos) -> test.test(buf.getInt(pos + at));
+                }
+                case DOUBLE: {
+                    int at = DataStore.numberPosition(field);
+                    DoublePredicate test = doubleTest();
+                    return (buf, pos) -> test.test(buf.getDouble(pos + at));
+                }
+                default: {
+                    int at = DataStore.stringField(field);
+                    if (kind == Kind.EQ) {
+                        return DataStore.stringEquals(at, (String) from, dict);
+                    }
+                    if (kind == Kind.PREFIX) {
+                        return DataStore.stringStartsWith(at, (String) from, dict);
+                    }
+                    return (buf, pos) -> inRange(DataStore.stringAt(buf, pos, at, dict));
+                }
+            }
+        }
+
+        /** Проверка значения целого поля без упаковки (для скана и колонок) */
+        IntPredicate intTest() {
+            // границы в long, чтобы исключающая граница у Integer.MAX_VALUE не переполнилась
+            long lo = from == null ? Long.MIN_VALUE : (Integer) from + (fromInclusive ? 0L : 1L);
+            long hi = to == null ? Long.MAX_VALUE : (Integer) to - (toInclusive ? 0L : 1L);
+            return v -> v >= lo && v <= hi;
+        }
+
+        /** Проверка значения price; Double.compare — тот же порядок, что у индекса (TreeMap<Double>) */
+        DoublePredicate doubleTest() {
+            boolean hasLo = from != null;
+            boolean hasHi = to != null;
+            double lo = hasLo ? (Double) from : 0;
+            double hi = hasHi ? (Double) to : 0;
+            int minLo = fromInclusive ? 0 : 1;
+            int maxHi = toInclusive ? 0 : -1;
+            return v -> (!hasLo || Double.compare(v, lo) >= minLo)
+                    && (!hasHi || Double.compare(v, hi) <= maxHi);
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case EQ:
+                    return field + " = " + literal(from);
+                case PREFIX:
+                    return field + " starts with " + literal(from);
+                default:
+                    if (from != null && to != null) {
+                        return literal(from) + (fromInclusive ? " <= " : " < ") + field
+                                + (toInclusive ? " <= " : " < ") + literal(to);
+                    }
+                    if (from != null) {
+                        return field + (fromInclusive ? " >= " : " > ") + literal(from);
+                    }
+                    if (to != null) {
+                        return field + (toInclusive ? " <= " : " < ") + literal(to);
+                    }
+                    return field + " is any";
+            }
+        }
+
+        private static String literal(Object value) {
+            return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+        }
+    }
+
+    /** AND / OR нескольких условий */
+    static final class Junction extends Query {
+        final boolean and;
+        final List<Query> parts;
+
+        private Junction(boolean and, Query[] parts) {
+            if (parts.length == 0) {
+                throw new IllegalArgumentException((and ? "AND" : "OR") + " needs at least one condition");
+            }
+            this.and = and;
+            this.parts = List.of(parts);
+        }
+
+        @Override
+        public boolean test(Product p) {
+            for (Query q : parts) {
+                if (q.test(p) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+
+        @Override
+        RecordFilter filter(StringDictionary dict) {
+            RecordFilter[] filters = new RecordFilter[parts.size()];
+            for (int i = 0; i < filters.length; i++) {
+                filters[i] = parts.get(i).filter(dict);
+            }
+            return (buf, pos) -> {
+                for (RecordFilter f : filters) {
+                    if (f.test(buf, pos) != and) {
+                        return !and;
+                    }
+                }
+                return and;
+            };
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner text = new StringJoiner(and ? " AND " : " OR ", "(", ")");
+            for (Query q : parts) {
+                text.add(q.toString());
+            }
+            return text.toString();
+        }
+    }
+}
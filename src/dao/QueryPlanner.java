@@ -0,0 +1,270 @@
+package dao;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Выбор способа выполнения Query (ProductDao.find): читать записи по индексу,
+ * отобрать их по колонкам (ColumnStore) или сканировать .dat целиком.
+ *
+ * Стоимость считается в записях: запись по индексу — случайное чтение,
+ * оно дороже записи при последовательном скане в INDEX_READ_COST раз.
+ * Для AND берётся самое избирательное из условий, по которым есть индекс
+ * (product_id — первичный, остальные — вторичные), для OR — объединение,
+ * если индекс есть у каждой ветви. Число записей по индексу известно точно:
+ * вторичный индекс считает их по своим спискам, ничего не читая.
+ * Прочитанные записи всегда проверяются всем условием целиком.
+ * Если индекс не помогает, а условие только по числовым полям и колонки
+ * включены, записи отбираются проходом по колонкам и читаются только совпавшие.
+ *
+ * Вызывать под блокировкой ProductDao.
+ */
+final class QueryPlanner {
+
+    /** Во сколько раз чтение записи по индексу дороже записи в скане */
+    static final int INDEX_READ_COST = 4;
+
+    private final IntLongHashMap index;
+    private final KeyOrder keyOrder;
+    private final Map<String, SecondaryIndex> secondaryIndexes;
+    private final int recordCount;
+    private final ColumnStore columns; // null — колонки отключены
+
+    QueryPlanner(IntLongHashMap index, KeyOrder keyOrder, Map<String, SecondaryIndex> secondaryIndexes,
+                 ColumnStore columns, int recordCount) {
+        this.index = index;
+        this.keyOrder = keyOrder;
+        this.secondaryIndexes = secondaryIndexes;
+        this.columns = columns;
+        this.recordCount = recordCount;
+    }
+
+    Plan plan(Query query) throws IOException {
+        Access best = choose(query);
+        boolean useIndex = best != null && best.estimate * INDEX_READ_COST < recordCount;
+        IntPredicate rowFilter = useIndex || columns == null ? null : columns.compile(query);
+        return new Plan(query, best, useIndex, rowFilter, recordCount);
+    }
+
+    /** Лучший доступ по индексу для условия; null — без скана не обойтись */
+    private Access choose(Query query) throws IOException {
+        if (query instanceof Query.Condition) {
+            return conditionAccess((Query.Condition) query);
+        }
+        Query.Junction junction = (Query.Junction) query;
+        if (junction.and) {
+            Access best = null;
+            for (Query part : junction.parts) {
+                Access a = choose(part);
+                if (a != null && (best == null || a.estimate < best.estimate)) {
+                    best = a;
+                }
+            }
+            return best;
+        }
+        List<Access> branches = new ArrayList<>();
+        for (Query part : junction.parts) {
+            Access a = choose(part);
+            if (a == null) {
+                return null; // ветвь без индекса всё равно требует полного скана
+            }
+            branches.add(a);
+        }
+        return branches.size() == 1 ? branches.get(0) : new Union(branches);
+    }
+
+    private Access conditionAccess(Query.Condition c) throws IOException {
+        if ("product_id".equals(c.field)) {
+            return keyAccess(c);
+        }
+        SecondaryIndex si = secondaryIndexes.get(c.field);
+        return si == null ? null : new IndexAccess(c, si);
+    }
+
+    /** Способ получить смещения кандидатов */
+    abstract static class Access {
+        final long estimate;
+
+        Access(long estimate) {
+            this.estimate = estimate;
+        }
+
+        abstract long[] offsets() throws IOException;
+
+        abstract void describe(StringBuilder out, String indent);
+    }
+
+    /** Условие по product_id: первичный индекс (равенство) или ключи по возрастанию (диапазон) */
+    private KeyAccess keyAccess(Query.Condition c) throws IOException {
+        if (c.kind == Query.Condition.Kind.EQ) {
+            // равенство — без сборки массива ключей
+            boolean found = index.get((Integer) c.from) != IntLongHashMap.NO_VALUE;
+            return new KeyAccess(c, found ? 1 : 0, 0, 0);
+        }
+        int[] keys = keyOrder.keys(index);
+        int size = keyOrder.size();
+        long lo = c.from == null ? Integer.MIN_VALUE : (Integer) c.from + (c.fromInclusive ? 0L : 1L);
+        long hi = c.to == null ? Integer.MAX_VALUE : (Integer) c.to - (c.toInclusive ? 0L : 1L);
+        if (lo > hi) {
+            return new KeyAccess(c, 0, 0, 0);
+        }
+        int i = Arrays.binarySearch(keys, 0, size, (int) lo);
+        int from = i >= 0 ? i : -i - 1;
+        int j = Arrays.binarySearch(keys, 0, size, (int) hi);
+        int to = Math.max(from, j >= 0 ? j + 1 : -j - 1);
+        return new KeyAccess(c, to - from, from, to);
+    }
+
+    private final class KeyAccess extends Access {
+        private final Query.Condition condition;
+        private final int from; // позиции [from, to) в ключах по возрастанию (для диапазона)
+        private final int to;
+
+        KeyAccess(Query.Condition condition, long estimate, int from, int to) {
+            super(estimate);
+            this.condition = condition;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        long[] offsets() throws IOException {
+            if (condition.kind == Query.Condition.Kind.EQ) {
+                long offset = index.get((Integer) condition.from);
+                return offset == IntLongHashMap.NO_VALUE ? new long[0] : new long[]{offset};
+            }
+            int[] keys = keyOrder.keys(index);
+            long[] offsets = new long[to - from];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = index.get(keys[from + i]);
+            }
+            return offsets;
+        }
+
+        @Override
+        void describe(StringBuilder out, String indent) {
+            out.append(indent).append("primary index ").append(condition)
+                    .append(" (").append(estimate).append(" records)\n");
+        }
+    }
+
+    /** Условие по полю со вторичным индексом */
+    private static final class IndexAccess extends Access {
+        private final Query.Condition condition;
+        private final SecondaryIndex si;
+
+        IndexAccess(Query.Condition c, SecondaryIndex si) {
+            super(c.kind == Query.Condition.Kind.PREFIX
+                    ? si.countPrefix((String) c.from)
+                    : si.count(c.from, c.fromInclusive, c.to, c.toInclusive));
+            this.condition = c;
+            this.si = si;
+        }
+
+        @Override
+        long[] offsets() {
+            return condition.kind == Query.Condition.Kind.PREFIX
+                    ? si.prefix((String) condition.from)
+                    : si.range(condition.from, condition.fromInclusive, condition.to, condition.toInclusive);
+        }
+
+        @Override
+        void describe(StringBuilder out, String indent) {
+            out.append(indent).append("index ").append(condition)
+                    .append(" (").append(estimate).append(" records)\n");
+        }
+    }
+
+    /** OR условий с индексами: объединение их смещений */
+    private static final class Union extends Access {
+        private final List<Access> branches;
+
+        Union(List<Access> branches) {
+            super(branches.stream().mapToLong(a -> a.estimate).sum());
+            this.branches = branches;
+        }
+
+        @Override
+        long[] offsets() throws IOException {
+            long[] all = new long[(int) estimate];
+            int n = 0;
+            for (Access a : branches) {
+                long[] part = a.offsets();
+                System.arraycopy(part, 0, all, n, part.length);
+                n += part.length;
+            }
+            return Arrays.copyOf(all, n);
+        }
+
+        @Override
+        void describe(StringBuilder out, String indent) {
+            out.append(indent).append("union (up to ").append(estimate).append(" records)\n");
+            for (Access a : branches) {
+                a.describe(out, indent + "  ");
+            }
+        }
+    }
+
+    /** Выбранный план */
+    static final class Plan {
+        private final Query query;
+        private final Access best;
+        private final boolean useIndex;
+        private final IntPredicate rowFilter;
+        private final int recordCount;
+
+        Plan(Query query, Access best, boolean useIndex, IntPredicate rowFilter, int recordCount) {
+            this.query = query;
+            this.best = best;
+            this.useIndex = useIndex;
+            this.rowFilter = rowFilter;
+            this.recordCount = recordCount;
+        }
+
+        boolean usesIndex() {
+            return useIndex;
+        }
+
+        boolean usesColumns() {
+            return rowFilter != null;
+        }
+
+        /** Условие как проверка строки ColumnStore (только если usesColumns) */
+        IntPredicate rowFilter() {
+            return rowFilter;
+        }
+
+        /** Смещения кандидатов по возрастанию, без повторов (только если usesIndex) */
+        long[] offsets() throws IOException {
+            long[] offsets = best.offsets();
+            Arrays.sort(offsets);
+            int n = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                if (n == 0 || offsets[i] != offsets[n - 1]) {
+                    offsets[n++] = offsets[i];
+                }
+            }
+            return Arrays.copyOf(offsets, n);
+        }
+
+        /** Текстовое описание плана: способ доступа, оценка числа записей, фильтр */
+        String explain() {
+            StringBuilder out = new StringBuilder();
+            if (useIndex) {
+                best.describe(out, "");
+            } else {
+                out.append(rowFilter != null ? "column scan (" : "full scan (").append(recordCount).append(" records)");
+                if (best == null) {
+                    out.append(", no index for this condition\n");
+                } else {
+                    out.append(", cheaper than reading ").append(best.estimate)
+                            .append(" records by index:\n");
+                    best.describe(out, "  ");
+                }
+            }
+            out.append("filter ").append(query);
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package dao;
+
+import model.Product;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Чтение .dat позиционными чтениями FileChannel.read(buf, position).
+ * Указатель файла не используется, так что читатели не мешают друг другу;
+ * при сканировании файл читается блоками по 64 КБ, а не по полю за вызов.
+ */
+class RandomAccessDataStore extends DataStore {
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final int RECORD_BUFFER_SIZE = 512;
+
+    RandomAccessDataStore(RandomAccessFile file, StringDictionary dictionary) {
+        super(file, dictionary);
+    }
+
+    @Override
+    Product readAt(long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_BUFFER_SIZE);
+        fill(buf, offset);
+        int end = recordEnd(buf, 0);
+        if (end < 0) {
+            if (buf.limit() < RECORD_HEADER_SIZE) {
+                throw new EOFException("Truncated record at offset " + offset);
+            }
+            // длинные строки — длина известна из заголовка, дочитываем целиком
+            buf = ByteBuffer.allocate(recordLengthAt(buf, 0));
+            fill(buf, offset);
+            if (buf.limit() < buf.capacity()) {
+                throw new EOFException("Truncated record at offset " + offset);
+            }
+        }
+        if (buf.get(0) != 0) {
+            return null; // deleted
+        }
+        Product p = new Product();
+        decode(buf, 0, p, dictionary);
+        return p;
+    }
+
+    @Override
+    long scan(long from, long to, RecordFilter filter, RecordVisitor visitor) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        fill(buf, from);
+        int pos = 0;
+        long offset = from;
+        while (offset < to) {
+            int end = recordEnd(buf, pos);
+            if (end < 0) {
+                // запись не поместилась в остаток буфера — перечитываем с её начала
+                if (pos == 0 && buf.limit() < buf.capacity()) {
+                    throw new EOFException("Truncated record at offset " + offset);
+                }
+                if (pos == 0) {
+                    // запись больше буфера: её длина уже видна в заголовке
+                    buf = ByteBuffer.allocate(recordLengthAt(buf, 0));
+                }
+                fill(buf, offset);
+                pos = 0;
+                continue;
+            }
+            if (filter.test(buf, pos)) {
+                Product p = new Product();
+                decode(buf, pos, p, dictionary);
+                visitor.visit(offset, buf.get(pos) != 0, p);
+            }
+            offset += end - pos;
+            pos = end;
+        }
+        return offset;
+    }
+
+    /** Читает в буфер сколько поместится начиная с position (или до конца файла) */
+    private void fill(ByteBuffer buf, long position) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        buf.flip();
+    }
+}
@@ -0,0 +1,114 @@
+package dao;
+
+import model.Product;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU-кэш записей по product_id перед findByKey.
+ *
+ * Ограничен числом записей и примерным объёмом (размер записи в .dat плюс
+ * накладные расходы объектов). Product изменяемый, поэтому кэш хранит и
+ * отдаёт копии — правка полученного объекта не портит кэш.
+ *
+ * Методы синхронизированы: findByKey вызывается из многих читателей сразу.
+ */
+class RecordCache {
+
+    /** Заголовки Product, четырёх String и их массивов, узел LinkedHashMap */
+    private static final int ENTRY_OVERHEAD = 200;
+
+    private final LinkedHashMap<Integer, Product> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries;
+    private long maxBytes;
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    RecordCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Копия записи из кэша или null */
+    synchronized Product get(int id) {
+        Product p = entries.get(id);
+        if (p == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(p);
+    }
+
+    synchronized void put(Product p) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            return;
+        }
+        long size = sizeOf(p);
+        if (size > maxBytes) {
+            return; // одна запись больше всего кэша — не кэшируем
+        }
+        Product old = entries.put(p.getProduct_id(), copy(p));
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += size;
+        evictOverflow();
+    }
+
+    synchronized void invalidate(int id) {
+        Product old = entries.remove(id);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /** Новые пределы; 0 отключает кэш */
+    synchronized void resize(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        evictOverflow();
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), bytes);
+    }
+
+    private void evictOverflow() {
+        // итератор LinkedHashMap в режиме accessOrder идёт от давно не использованных
+        Iterator<Product> it = entries.values().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= sizeOf(it.next());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(Product p) {
+        return ENTRY_OVERHEAD + DataStore.recordLength(p, null);
+    }
+
+    private static Product copy(Product p) {
+        Product c = new Product();
+        c.setProduct_id(p.getProduct_id());
+        c.setSeller_id(p.getSeller_id());
+        c.setName(p.getName());
+        c.setPrice(p.getPrice());
+        c.setBrand(p.getBrand());
+        c.setArticle(p.getArticle());
+        c.setStock_quantity(p.getStock_quantity());
+        c.setCategory(p.getCategory());
+        c.setDescription(p.getDescription());
+        return c;
+    }
+}
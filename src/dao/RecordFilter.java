@@ -0,0 +1,18 @@
+package dao;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Отбор записи по её байтам до разбора в Product.
+ * pos — начало записи в buf (флаг deleted), поля читаются абсолютными get-ами.
+ */
+@FunctionalInterface
+interface RecordFilter {
+
+    RecordFilter ALL = (buf, pos) -> true;
+
+    /** Только не удалённые записи */
+    RecordFilter LIVE = (buf, pos) -> buf.get(pos) == 0;
+
+    boolean test(ByteBuffer buf, int pos);
+}
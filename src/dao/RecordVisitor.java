@@ -0,0 +1,11 @@
+package dao;
+
+import model.Product;
+
+import java.io.IOException;
+
+/** Обработчик записи при последовательном просмотре файла .dat */
+@FunctionalInterface
+interface RecordVisitor {
+    void visit(long offset, boolean deleted, Product p) throws IOException;
+}
@@ -0,0 +1,14 @@
+package dao;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Получатель строк таблицы при потоковом чтении XLSX/CSV */
+interface RowHandler {
+
+    /** Начался новый лист (для CSV — один лист с именем null) */
+    void startSheet(String sheetName) throws IOException;
+
+    /** Очередная строка: номер с 1, значения ячеек как текст (пустые — "") */
+    void row(int rowNumber, List<String> cells) throws IOException;
+}
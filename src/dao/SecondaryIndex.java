@@ -0,0 +1,305 @@
+package dao;
+
+import model.Product;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Вторичный индекс по неключевому полю: значение поля -> смещения записей в .dat.
+ * Значения упорядочены (TreeMap), поэтому кроме поиска по равенству индекс
+ * отвечает на запросы по диапазону значений и по префиксу строки.
+ * Хранит только живые записи.
+ */
+class SecondaryIndex {
+
+    /** Тип значений поля */
+    enum KeyType {
+        INT,
+        DOUBLE,
+        STRING
+    }
+
+    private final String fieldName;
+    private final KeyType keyType;
+    private final TreeMap<Object, Postings> entries = new TreeMap<>();
+
+    SecondaryIndex(String fieldName) {
+        this.fieldName = fieldName;
+        this.keyType = keyType(fieldName);
+    }
+
+    String getFieldName() {
+        return fieldName;
+    }
+
+    void add(Product p, long offset) {
+        entries.computeIfAbsent(valueOf(p, fieldName), k -> new Postings()).add(offset);
+    }
+
+    void remove(Product p, long offset) {
+        Object key = valueOf(p, fieldName);
+        Postings offsets = entries.get(key);
+        if (offsets != null && offsets.remove(offset) && offsets.size == 0) {
+            entries.remove(key);
+        }
+    }
+
+    /** Смещения записей с данным значением поля, по возрастанию (порядок файла) */
+    long[] find(Object value) {
+        Postings offsets = value == null ? null : entries.get(normalize(fieldName, value));
+        return offsets == null ? new long[0] : Arrays.copyOf(offsets.offsets, offsets.size);
+    }
+
+    /**
+     * Смещения записей со значением поля в [from, to] (null — граница не задана)
+     * в порядке значений, внутри одного значения — в порядке файла.
+     */
+    long[] range(Object from, Object to) {
+        return range(from, true, to, true);
+    }
+
+    long[] range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        return collect(subMap(from, fromInclusive, to, toInclusive).values());
+    }
+
+    /** Сколько записей попадёт в range — без сборки смещений (для планировщика запросов) */
+    long count(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        return count(subMap(from, fromInclusive, to, toInclusive).values());
+    }
+
+    /** Смещения записей, у которых строковое поле начинается с prefix, в порядке значений */
+    long[] prefix(String prefix) {
+        return collect(prefixMap(prefix).values());
+    }
+
+    long countPrefix(String prefix) {
+        return count(prefixMap(prefix).values());
+    }
+
+    private NavigableMap<Object, Postings> subMap(Object from, boolean fromInclusive,
+                                                  Object to, boolean toInclusive) {
+        Object lo = from == null ? null : normalize(fieldName, from);
+        Object hi = to == null ? null : normalize(fieldName, to);
+        if (lo != null && hi != null && compare(lo, hi) > 0) {
+            return Collections.emptyNavigableMap();
+        }
+        NavigableMap<Object, Postings> sub = entries;
+        if (lo != null) {
+            sub = sub.tailMap(lo, fromInclusive);
+        }
+        if (hi != null) {
+            sub = sub.headMap(hi, toInclusive);
+        }
+        return sub;
+    }
+
+    private NavigableMap<Object, Postings> prefixMap(String prefix) {
+        if (keyType != KeyType.STRING) {
+            throw new IllegalArgumentException("Prefix search needs a text field: " + fieldName);
+        }
+        if (prefix.isEmpty()) {
+            return entries;
+        }
+        // все строки с префиксом лежат между prefix и prefix + максимальный символ
+        return entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static long count(Collection<Postings> postings) {
+        long n = 0;
+        for (Postings p : postings) {
+            n += p.size;
+        }
+        return n;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /** Переводит все смещения на новые после уплотнения .dat */
+    void remapOffsets(OffsetRemap remap) {
+        for (Postings p : entries.values()) {
+            // уплотнение сохраняет порядок записей, так что массивы остаются отсортированными
+            for (int i = 0; i < p.size; i++) {
+                p.offsets[i] = remap.map(p.offsets[i]);
+            }
+        }
+    }
+
+    private static long[] collect(Collection<Postings> postings) {
+        long[] result = new long[(int) count(postings)];
+        int pos = 0;
+        for (Postings p : postings) {
+            System.arraycopy(p.offsets, 0, result, pos, p.size);
+            pos += p.size;
+        }
+        return result;
+    }
+
+    /**
+     * Смещения записей с одним значением поля, по возрастанию.
+     * Примитивный массив вместо Set<Long>: новые записи дописываются в конец .dat,
+     * поэтому добавление почти всегда — запись в хвост массива.
+     */
+    private static final class Postings {
+        long[] offsets = new long[1];
+        int size;
+
+        void add(long offset) {
+            int pos = size;
+            if (size > 0 && offset <= offsets[size - 1]) {
+                int i = Arrays.binarySearch(offsets, 0, size, offset);
+                if (i >= 0) {
+                    return;
+                }
+                pos = -i - 1;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            System.arraycopy(offsets, pos, offsets, pos + 1, size - pos);
+            offsets[pos] = offset;
+            size++;
+        }
+
+        boolean remove(long offset) {
+            int i = Arrays.binarySearch(offsets, 0, size, offset);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(offsets, i + 1, offsets, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+
+    /* ==================== Значения поля ==================== */
+
+    /** Тип значений поля Product (product_id тоже INT) */
+    static KeyType keyType(String fieldName) {
+        switch (fieldName) {
+            case "product_id":
+            case "seller_id":
+            case "article":
+            case "stock_quantity":
+                return KeyType.INT;
+            case "price":
+                return KeyType.DOUBLE;
+            case "name":
+            case "brand":
+            case "category":
+            case "description":
+                return KeyType.STRING;
+            default:
+                throw new IllegalArgumentException("Unknown field: " + fieldName);
+        }
+    }
+
+    /** Значение поля записи в виде ключа индекса */
+    static Object valueOf(Product p, String fieldName) {
+        switch (fieldName) {
+            case "product_id":
+                return p.getProduct_id();
+            case "seller_id":
+                return p.getSeller_id();
+            case "article":
+                return p.getArticle();
+            case "stock_quantity":
+                return p.getStock_quantity();
+            case "price":
+                return p.getPrice();
+            case "name":
+                return nonNull(p.getName());        // в файле null хранится как ""
+            case "brand":
+                return nonNull(p.getBrand());
+            case "category":
+                return nonNull(p.getCategory());
+            case "description":
+                return nonNull(p.getDescription());
+            default:
+                throw new IllegalArgumentException("Unknown field: " + fieldName);
+        }
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    /** Приводим искомое значение к типу ключа (из GUI приходят строки) */
+    static Object normalize(String fieldName, Object value) {
+        switch (keyType(fieldName)) {
+            case INT:
+                return value instanceof Number
+                        ? ((Number) value).intValue()
+                        : Integer.parseInt(value.toString().trim());
+            case DOUBLE:
+                return value instanceof Number
+                        ? ((Number) value).doubleValue()
+                        : Double.parseDouble(value.toString().trim());
+            default:
+                return value.toString();
+        }
+    }
+
+    /** Сравнение двух значений одного поля (оба уже normalize-нуты) */
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    /* ==================== Сохранение ==================== */
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(fieldName);
+        out.writeInt(entries.size());
+        for (Map.Entry<Object, Postings> e : entries.entrySet()) {
+            switch (keyType) {
+                case INT:
+                    out.writeInt((Integer) e.getKey());
+                    break;
+                case DOUBLE:
+                    out.writeDouble((Double) e.getKey());
+                    break;
+                default:
+                    out.writeUTF((String) e.getKey());
+            }
+            Postings p = e.getValue();
+            out.writeInt(p.size);
+            for (int i = 0; i < p.size; i++) {
+                out.writeLong(p.offsets[i]);
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        entries.clear();
+        String name = in.readUTF();
+        if (!fieldName.equals(name)) {
+            throw new IOException("Unexpected index field: " + name + ", expected " + fieldName);
+        }
+        int valueCount = in.readInt();
+        for (int i = 0; i < valueCount; i++) {
+            Object key;
+            switch (keyType) {
+                case INT:
+                    key = in.readInt();
+                    break;
+                case DOUBLE:
+                    key = in.readDouble();
+                    break;
+                default:
+                    key = in.readUTF();
+            }
+            Postings p = new Postings();
+            p.size = in.readInt();
+            p.offsets = new long[Math.max(1, p.size)];
+            for (int j = 0; j < p.size; j++) {
+                p.offsets[j] = in.readLong();
+            }
+            entries.put(key, p);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package dao;
+
+/**
+ * Способ хранения и чтения файла данных .dat.
+ * В первых двух режимах файл одинаковый, различается только чтение;
+ * COMPRESSED хранит записи сжатыми блоками. Смещения записей во всех режимах
+ * одни и те же, так что при открытии в другом режиме файл переписывается,
+ * а индексы остаются верными.
+ */
+public enum StorageMode {
+    /** Позиционное чтение FileChannel.read(buf, position); скан читает файл блоками по 64 КБ */
+    RANDOM_ACCESS,
+    /** Чтение через отображение файла в память (FileChannel.map) */
+    MEMORY_MAPPED,
+    /** Записи сжаты блоками (Deflate); чтение записи распаковывает один блок */
+    COMPRESSED
+}
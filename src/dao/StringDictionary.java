@@ -0,0 +1,166 @@
+package dao;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь значений brand и category одного файла .dat: у этих полей
+ * значений немного, поэтому запись хранит вместо строки код (2 байта).
+ * Код 0 — строка лежит в самой записи: пустые и слишком длинные значения
+ * и значения, которым не хватило места в словаре.
+ *
+ * Словарь лежит в заголовке .dat (DICTIONARY_POS, до HEADER_SIZE):
+ * [число значений 4][значения: поле 1, длина 2, байты UTF-8]. Он только
+ * дописывается, коды значений не меняются до truncate, поэтому значение
+ * либо закодировано во всех записях, либо ни в одной.
+ * Декодированное значение — общий экземпляр String, чтение записи его не создаёт.
+ *
+ * Дописывает словарь DataStore под блокировкой записи; читать (value, code)
+ * можно из любых потоков, в том числе из уплотнения без блокировки.
+ */
+final class StringDictionary {
+
+    static final int DICTIONARY_POS = 16;
+    /** Длиннее — не кодируем: это уже не «одно из немногих» значений */
+    static final int MAX_VALUE_BYTES = 255;
+    private static final int MAX_CODE = 0xFFFF;
+    private static final int ENTRY_HEADER = 3; // поле и длина
+
+    private final int capacity;
+    // код -> значение по номеру поля; массивы подменяются целиком (копия при записи)
+    private volatile String[][] values = new String[4][];
+    private final Map<String, Integer>[] codes;
+    private int count;
+    // значения в порядке добавления, как они лежат в заголовке (после счётчика)
+    private byte[] entries = new byte[256];
+    private int entriesSize;
+
+    @SuppressWarnings("unchecked")
+    StringDictionary(int capacity) {
+        this.capacity = capacity;
+        this.codes = (Map<String, Integer>[]) new Map<?, ?>[4];
+        for (int field : new int[]{DataStore.BRAND, DataStore.CATEGORY}) {
+            values[field] = new String[]{null}; // код 0 не занят
+            codes[field] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /** Кодируется ли строковое поле (номер из таблицы концов строк DataStore) */
+    static boolean isCoded(int field) {
+        return field == DataStore.BRAND || field == DataStore.CATEGORY;
+    }
+
+    /** Код значения или 0, если его нет в словаре */
+    int code(int field, String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes[field].get(value);
+        return code == null ? 0 : code;
+    }
+
+    /** Значение по коду (код не 0) */
+    String value(int field, int code) {
+        return values[field][code];
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Добавляет в словарь значение, если оно подходит и для него есть место.
+     * Возвращает код значения или 0 — тогда оно пишется в запись.
+     */
+    int add(int field, String value) {
+        int code = code(field, value);
+        if (code != 0 || value == null || value.isEmpty()) {
+            return code;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        String[] current = values[field];
+        int entrySize = ENTRY_HEADER + bytes.length;
+        if (bytes.length > MAX_VALUE_BYTES || current.length > MAX_CODE
+                || Integer.BYTES + entriesSize + entrySize > capacity) {
+            return 0;
+        }
+        if (entriesSize + entrySize > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(entries.length * 2, entriesSize + entrySize));
+        }
+        ByteBuffer.wrap(entries, entriesSize, entrySize)
+                .put((byte) field).putShort((short) bytes.length).put(bytes);
+        entriesSize += entrySize;
+        code = current.length;
+        String[] updated = Arrays.copyOf(current, code + 1);
+        updated[code] = value;
+        String[][] all = values.clone();
+        all[field] = updated;
+        values = all;
+        codes[field].put(value, code);
+        count++;
+        return code;
+    }
+
+    /** Забывает все значения (файл очищен) */
+    void clear() {
+        for (int field : new int[]{DataStore.BRAND, DataStore.CATEGORY}) {
+            codes[field].clear();
+        }
+        String[][] all = values.clone();
+        all[DataStore.BRAND] = new String[]{null};
+        all[DataStore.CATEGORY] = new String[]{null};
+        values = all;
+        count = 0;
+        entriesSize = 0;
+    }
+
+    /* ==================== Заголовок .dat ==================== */
+
+    /**
+     * Пишет словарь в заголовок файла. Уже записанные значения не сдвигаются,
+     * новые дописываются за ними, счётчик пишется последним: параллельно
+     * открывающий файл (уплотнение) видит либо старый счётчик, либо уже дописанные значения.
+     */
+    void write(FileChannel channel) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(entries, 0, entriesSize), DICTIONARY_POS + Integer.BYTES);
+        writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(0, count), DICTIONARY_POS);
+    }
+
+    static StringDictionary read(FileChannel channel, int capacity) throws IOException {
+        ByteBuffer area = ByteBuffer.allocate(capacity);
+        while (area.hasRemaining()) {
+            if (channel.read(area, DICTIONARY_POS + area.position()) < 0) {
+                break;
+            }
+        }
+        area.flip();
+        StringDictionary dict = new StringDictionary(capacity);
+        int n = area.getInt();
+        for (int i = 0; i < n; i++) {
+            int field = area.get();
+            int length = area.getShort() & 0xFFFF;
+            if (!isCoded(field) || length > area.remaining()) {
+                throw new StreamCorruptedException("Corrupted string dictionary entry " + i);
+            }
+            byte[] bytes = new byte[length];
+            area.get(bytes);
+            if (dict.add(field, new String(bytes, StandardCharsets.UTF_8)) == 0) {
+                throw new StreamCorruptedException("Corrupted string dictionary entry " + i);
+            }
+        }
+        return dict;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long at = position - buf.position();
+        while (buf.hasRemaining()) {
+            channel.write(buf, at + buf.position());
+        }
+    }
+}
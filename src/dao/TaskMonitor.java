@@ -0,0 +1,28 @@
+package dao;
+
+/**
+ * Наблюдатель долгой операции (скан, экспорт): получает прогресс и может её отменить.
+ *
+ * Отмена кооперативная: операция проверяет isCancelled() между пачками
+ * и бросает java.util.concurrent.CancellationException. Прерывать поток
+ * (interrupt) нельзя — это закрыло бы канал файла для всех.
+ * Методы могут вызываться из нескольких потоков сразу (параллельный скан).
+ */
+public interface TaskMonitor {
+
+    TaskMonitor NONE = new TaskMonitor() {
+        @Override
+        public void progress(long done, long total) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /** Сделано done из total (единицы зависят от операции: байты .dat, строки) */
+    void progress(long done, long total);
+
+    boolean isCancelled();
+}
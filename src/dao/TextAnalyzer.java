@@ -0,0 +1,104 @@
+package dao;
+
+import model.Product;
+
+import java.util.*;
+
+/**
+ * Разбор текста для полнотекстового поиска (TextIndex).
+ *
+ * Слово — непрерывная последовательность букв и цифр (кириллица, латиница
+ * и любые другие алфавиты). Слова приводятся к нижнему регистру, "ё" — к "е",
+ * затем от них отрезается окончание (лёгкий стеммер: одно самое длинное
+ * окончание из списка, основа не короче MIN_STEM букв). Поиск "кроссовки"
+ * найдёт "кроссовка" и "кроссовкам", "batteries" — "battery".
+ *
+ * Запрос разбирается так же, как документ, поэтому стемминг может ошибаться
+ * как угодно — главное, одинаково с обеих сторон.
+ */
+final class TextAnalyzer {
+
+    /** Слово в названии весит как NAME_WEIGHT слов в описании */
+    static final int NAME_WEIGHT = 2;
+
+    private static final int MIN_STEM = 3;
+
+    // от длинных к коротким: отрезается первое подошедшее
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ость", "ться", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими",
+            "ой", "ей", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ую", "юю",
+            "ов", "ев", "ам", "ям", "ах", "ях", "ом", "ем", "ть",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+    private static final String[] ENGLISH_ENDINGS = {
+            "ing", "ies", "ed", "s"
+    };
+
+    private TextAnalyzer() {
+    }
+
+    /** Слова текста после нормализации и стемминга, в порядке появления (с повторами) */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                terms.add(stem(fold(text.substring(start, i))));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Слова записи с частотами: название и описание, слова названия с весом NAME_WEIGHT.
+     * Сумма частот — длина документа для ранжирования.
+     */
+    static Map<String, Integer> termFrequencies(Product p) {
+        Map<String, Integer> tf = new HashMap<>();
+        for (String t : terms(p.getName())) {
+            tf.merge(t, NAME_WEIGHT, Integer::sum);
+        }
+        for (String t : terms(p.getDescription())) {
+            tf.merge(t, 1, Integer::sum);
+        }
+        return tf;
+    }
+
+    /** Слова запроса без повторов */
+    static List<String> queryTerms(String query) {
+        return new ArrayList<>(new LinkedHashSet<>(terms(query)));
+    }
+
+    private static String fold(String word) {
+        return word.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    static String stem(String word) {
+        if (word.length() <= MIN_STEM || !Character.isLetter(word.charAt(word.length() - 1))) {
+            return word; // короткие слова и числа/артикулы как есть
+        }
+        String[] endings = isCyrillic(word.charAt(word.length() - 1)) ? RUSSIAN_ENDINGS : ENGLISH_ENDINGS;
+        for (String ending : endings) {
+            if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM
+                    && !word.endsWith("ss")) { // glass, class — не множественное число
+                String stem = word.substring(0, word.length() - ending.length());
+                if ("ies".equals(ending)) {
+                    return stem + "y";
+                }
+                return stem;
+            }
+        }
+        return word;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return Character.UnicodeBlock.of(c) == Character.UnicodeBlock.CYRILLIC;
+    }
+}
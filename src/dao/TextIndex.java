@@ -0,0 +1,257 @@
+package dao;
+
+import model.Product;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Полнотекстовый (инвертированный) индекс по name и description:
+ * слово (после TextAnalyzer) -> записи, где оно встречается, с частотой слова
+ * и длиной записи. Поиск ранжирует записи по BM25: редкие слова запроса весят
+ * больше частых, короткая запись с тем же словом выше длинной.
+ * Хранит только живые записи.
+ */
+class TextIndex {
+
+    // стандартные параметры BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    /** Частота и длина упаковываются в один int по 16 бит */
+    private static final int MAX_PACKED = 0xFFFF;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private long docCount;
+    private long totalLength;
+
+    void add(Product p, long offset) {
+        Map<String, Integer> tf = TextAnalyzer.termFrequencies(p);
+        int length = length(tf);
+        int packedLength = Math.min(length, MAX_PACKED);
+        for (Map.Entry<String, Integer> e : tf.entrySet()) {
+            int packed = Math.min(e.getValue(), MAX_PACKED) << 16 | packedLength;
+            terms.computeIfAbsent(e.getKey(), k -> new Postings()).add(offset, packed);
+        }
+        docCount++;
+        totalLength += length;
+    }
+
+    void remove(Product p, long offset) {
+        Map<String, Integer> tf = TextAnalyzer.termFrequencies(p);
+        boolean found = tf.isEmpty(); // запись без слов учтена только в счётчиках
+        for (String term : tf.keySet()) {
+            Postings postings = terms.get(term);
+            if (postings != null && postings.remove(offset)) {
+                found = true;
+                if (postings.size == 0) {
+                    terms.remove(term);
+                }
+            }
+        }
+        if (found) {
+            docCount--;
+            totalLength -= length(tf);
+        }
+    }
+
+    /**
+     * Смещения записей, содержащих хотя бы одно слово запроса, по убыванию
+     * релевантности (при равной — в порядке файла), не больше limit.
+     * Списки слов обходятся одновременно по возрастанию смещений,
+     * в памяти держатся только limit лучших.
+     */
+    long[] search(List<String> queryTerms, int limit) {
+        List<Postings> lists = new ArrayList<>();
+        for (String term : queryTerms) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                lists.add(postings);
+            }
+        }
+        double[] weights = new double[lists.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = idf(lists.get(i).size, docCount);
+        }
+        double avgLength = averageLength(docCount, totalLength);
+        int[] pos = new int[lists.size()];
+        PriorityQueue<Hit> top = new PriorityQueue<>(Hit.WORST_FIRST);
+        while (limit > 0) {
+            long doc = Long.MAX_VALUE;
+            for (int i = 0; i < pos.length; i++) {
+                Postings p = lists.get(i);
+                if (pos[i] < p.size && p.offsets[pos[i]] < doc) {
+                    doc = p.offsets[pos[i]];
+                }
+            }
+            if (doc == Long.MAX_VALUE) {
+                break;
+            }
+            double score = 0;
+            for (int i = 0; i < pos.length; i++) {
+                Postings p = lists.get(i);
+                if (pos[i] < p.size && p.offsets[pos[i]] == doc) {
+                    int packed = p.packed[pos[i]++];
+                    score += weights[i] * termWeight(packed >>> 16, packed & MAX_PACKED, avgLength);
+                }
+            }
+            offer(top, doc, score, limit);
+        }
+        return Hit.bestFirst(top);
+    }
+
+    /** Добавляет попадание в top, если оно лучше худшего из limit лучших */
+    static void offer(PriorityQueue<Hit> top, long offset, double score, int limit) {
+        if (top.size() < limit) {
+            top.add(new Hit(offset, score));
+        } else {
+            Hit worst = top.peek();
+            if (score > worst.score || (score == worst.score && offset < worst.offset)) {
+                top.poll();
+                top.add(new Hit(offset, score));
+            }
+        }
+    }
+
+    void clear() {
+        terms.clear();
+        docCount = 0;
+        totalLength = 0;
+    }
+
+    /** Переводит все смещения на новые после уплотнения .dat */
+    void remapOffsets(OffsetRemap remap) {
+        for (Postings p : terms.values()) {
+            for (int i = 0; i < p.size; i++) {
+                p.offsets[i] = remap.map(p.offsets[i]);
+            }
+        }
+    }
+
+    /* ==================== Ранжирование (BM25) ==================== */
+
+    /** Длина записи — сумма частот её слов */
+    static int length(Map<String, Integer> tf) {
+        int length = 0;
+        for (int f : tf.values()) {
+            length += f;
+        }
+        return length;
+    }
+
+    /** Вес слова по числу записей df, где оно есть, из docCount */
+    static double idf(long df, long docCount) {
+        return Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+    }
+
+    static double averageLength(long docCount, long totalLength) {
+        return docCount == 0 ? 1 : Math.max(1, (double) totalLength / docCount);
+    }
+
+    /** Вклад частоты tf слова в записи длины length */
+    static double termWeight(int tf, int length, double avgLength) {
+        tf = Math.min(tf, MAX_PACKED);
+        length = Math.min(length, MAX_PACKED);
+        return tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+    }
+
+    /** Найденная запись с её релевантностью */
+    static final class Hit {
+        // худший — с меньшей релевантностью, при равной — дальше в файле
+        static final Comparator<Hit> WORST_FIRST = Comparator.<Hit>comparingDouble(h -> h.score)
+                .thenComparing(Comparator.<Hit>comparingLong(h -> h.offset).reversed());
+
+        final long offset;
+        final double score;
+
+        Hit(long offset, double score) {
+            this.offset = offset;
+            this.score = score;
+        }
+
+        /** Смещения из очереди лучших, от лучшего к худшему */
+        static long[] bestFirst(PriorityQueue<Hit> top) {
+            long[] offsets = new long[top.size()];
+            for (int i = offsets.length - 1; i >= 0; i--) {
+                offsets[i] = top.poll().offset;
+            }
+            return offsets;
+        }
+    }
+
+    /** Записи с одним словом по возрастанию смещения; packed — частота << 16 | длина записи */
+    private static final class Postings {
+        long[] offsets = new long[1];
+        int[] packed = new int[1];
+        int size;
+
+        void add(long offset, int value) {
+            int pos = size;
+            if (size > 0 && offset <= offsets[size - 1]) {
+                int i = Arrays.binarySearch(offsets, 0, size, offset);
+                if (i >= 0) {
+                    packed[i] = value;
+                    return;
+                }
+                pos = -i - 1;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                packed = Arrays.copyOf(packed, size * 2);
+            }
+            System.arraycopy(offsets, pos, offsets, pos + 1, size - pos);
+            System.arraycopy(packed, pos, packed, pos + 1, size - pos);
+            offsets[pos] = offset;
+            packed[pos] = value;
+            size++;
+        }
+
+        boolean remove(long offset) {
+            int i = Arrays.binarySearch(offsets, 0, size, offset);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(offsets, i + 1, offsets, i, size - i - 1);
+            System.arraycopy(packed, i + 1, packed, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+
+    /* ==================== Сохранение ==================== */
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(docCount);
+        out.writeLong(totalLength);
+        out.writeInt(terms.size());
+        for (Map.Entry<String, Postings> e : terms.entrySet()) {
+            out.writeUTF(e.getKey());
+            Postings p = e.getValue();
+            out.writeInt(p.size);
+            for (int i = 0; i < p.size; i++) {
+                out.writeLong(p.offsets[i]);
+                out.writeInt(p.packed[i]);
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        clear();
+        docCount = in.readLong();
+        totalLength = in.readLong();
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            Postings p = new Postings();
+            p.size = in.readInt();
+            p.offsets = new long[Math.max(1, p.size)];
+            p.packed = new int[Math.max(1, p.size)];
+            for (int j = 0; j < p.size; j++) {
+                p.offsets[j] = in.readLong();
+                p.packed[j] = in.readInt();
+            }
+            terms.put(term, p);
+        }
+    }
+}
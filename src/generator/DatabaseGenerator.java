@@ -1,11 +1,17 @@
 package generator;
 
+import dao.Database;
 import dao.ProductDao;
 import model.Product;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DatabaseGenerator {
 
@@ -33,22 +39,96 @@ public class DatabaseGenerator {
             "Произведено в России. Сертифицировано."
     };
 
-    private static final Random rnd = new Random();
+    private static final String[] EXTRAS = {
+            "Бесплатная доставка по России.",
+            "Акция: скидка 15% при покупке 2 шт.",
+            "В наличии в 5 цветах.",
+            "Подарочная упаковка в комплекте.",
+            "Гарантия возврата 30 дней."
+    };
 
-    public static void main(String[] args) {
-        Path dataPath = Paths.get("wildberries_products.dat");
-        Path indexPath = Paths.get("wildberries_products.idx");
+    /** Столько товаров генерирует одна задача и пишет один insertAll */
+    private static final int BLOCK_SIZE = 65_536;
+
+    /** Параметры генерации */
+    public static class Options {
+        private int rows = 100;
+        private long seed = 42;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private double zipfExponent = 0;   // 0 — категории и бренды равновероятны
+        private int maxExtraSentences = 1; // сколько доп. фраз может быть в описании
+        private int maxNameNumber = 50;    // номер модели в названии: 1..maxNameNumber
+
+        public Options rows(int rows) {
+            this.rows = rows;
+            return this;
+        }
 
-        try (ProductDao db = new ProductDao(dataPath, indexPath)) {
-            db.create();
+        public Options seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
 
-            for (int i = 1; i <= 100; i++) {
-                Product p = generateProduct(i);
-                db.insert(p);
-            }
+        public Options threads(int threads) {
+            this.threads = Math.max(1, threads);
+            return this;
+        }
+
+        /** Перекос популярности категорий и брендов по закону Ципфа (обычно 0.8–1.2) */
+        public Options zipfExponent(double zipfExponent) {
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
 
+        public Options maxExtraSentences(int maxExtraSentences) {
+            this.maxExtraSentences = maxExtraSentences;
+            return this;
+        }
+
+        public Options maxNameNumber(int maxNameNumber) {
+            this.maxNameNumber = maxNameNumber;
+            return this;
+        }
+    }
+
+    private final Options options;
+    private final ZipfSampler categories;
+    private final ZipfSampler brands;
+
+    public DatabaseGenerator(Options options) {
+        this.options = options;
+        this.categories = new ZipfSampler(CATEGORIES.length, options.zipfExponent);
+        this.brands = new ZipfSampler(BRANDS.length, options.zipfExponent);
+    }
+
+    /**
+     * Запуск: java generator.DatabaseGenerator [--rows 100] [--seed 42] [--threads N]
+     * [--zipf 0] [--extra 1] [--name-max 50] [--out wildberries_products.dat]
+     */
+    public static void main(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            opts.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        Options options = new Options()
+                .rows(Integer.parseInt(opts.getOrDefault("rows", "100")))
+                .seed(Long.parseLong(opts.getOrDefault("seed", "42")))
+                .threads(Integer.parseInt(opts.getOrDefault("threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))))
+                .zipfExponent(Double.parseDouble(opts.getOrDefault("zipf", "0")))
+                .maxExtraSentences(Integer.parseInt(opts.getOrDefault("extra", "1")))
+                .maxNameNumber(Integer.parseInt(opts.getOrDefault("name-max", "50")));
+
+        Path dataPath = Paths.get(opts.getOrDefault("out", "wildberries_products.dat"));
+        Path indexPath = Paths.get(dataPath.toString().replaceFirst("\\.dat$", "") + ".idx");
+
+        long start = System.nanoTime();
+        try (ProductDao db = new ProductDao(dataPath, indexPath)) {
+            db.create();
+            new DatabaseGenerator(options).generate(db);
             db.save();
-            System.out.println("База данных с 100 товарами успешно создана:");
+            System.out.printf("База данных с %d товарами создана за %.1f с:%n",
+                    options.rows, (System.nanoTime() - start) / 1e9);
             System.out.println("   Данные: " + dataPath.toAbsolutePath());
             System.out.println("   Индекс: " + indexPath.toAbsolutePath());
         } catch (IOException e) {
@@ -56,14 +136,60 @@ public class DatabaseGenerator {
         }
     }
 
-    private static Product generateProduct(int id) {
+    /**
+     * Заполняет БД товарами с id 1..rows.
+     * Товары генерируются блоками на пуле потоков, у каждого блока свой
+     * SplittableRandom, посеянный от (seed, номер блока), а пишутся блоки по порядку
+     * одним insertAll — поэтому результат зависит только от seed, а не от числа потоков.
+     */
+    public void generate(Database<Product, Integer> db) throws IOException {
+        int blocks = (int) ((options.rows + (long) BLOCK_SIZE - 1) / BLOCK_SIZE);
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads, r -> {
+            Thread t = new Thread(r, "generator");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            ArrayDeque<Future<List<Product>>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            for (int written = 0; written < blocks; written++) {
+                // в работе не больше двух блоков на поток, чтобы не держать в памяти всё
+                while (next < blocks && inFlight.size() < options.threads * 2) {
+                    int block = next++;
+                    inFlight.add(pool.submit(() -> generateBlock(block)));
+                }
+                db.insertAll(inFlight.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Generation interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Generation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<Product> generateBlock(int block) {
+        SplittableRandom rnd = new SplittableRandom(mix(options.seed, block));
+        int from = block * BLOCK_SIZE + 1;
+        int to = (int) Math.min(options.rows, (long) from + BLOCK_SIZE - 1);
+        List<Product> products = new ArrayList<>(to - from + 1);
+        for (int id = from; id <= to; id++) {
+            products.add(generateProduct(id, rnd));
+        }
+        return products;
+    }
+
+    /** Случайный товар с заданным id; при одинаковом состоянии rnd — одинаковый товар */
+    public Product generateProduct(int id, SplittableRandom rnd) {
         Product p = new Product();
         p.setProduct_id(id);
         p.setSeller_id(1000 + rnd.nextInt(9000)); // случайный ID продавца
 
         String nameBase = NAMES[rnd.nextInt(NAMES.length)];
-        String brand = BRANDS[rnd.nextInt(BRANDS.length)];
-        p.setName(brand + " " + nameBase + " " + (rnd.nextInt(50) + 1));
+        String brand = BRANDS[brands.sample(rnd)];
+        p.setName(brand + " " + nameBase + " " + (rnd.nextInt(options.maxNameNumber) + 1));
 
         p.setPrice(roundToTwoDecimals(500 + rnd.nextDouble() * 49500)); // 500–50,000 руб
 
@@ -72,13 +198,14 @@ public class DatabaseGenerator {
 
         p.setStock_quantity(rnd.nextInt(200) + 1); // 1–200 шт
 
-        p.setCategory(CATEGORIES[rnd.nextInt(CATEGORIES.length)]);
+        p.setCategory(CATEGORIES[categories.sample(rnd)]);
 
-        String desc = DESCRIPTIONS[rnd.nextInt(DESCRIPTIONS.length)];
-        if (rnd.nextBoolean()) {
-            desc += " " + generateExtraDescription();
+        StringBuilder desc = new StringBuilder(DESCRIPTIONS[rnd.nextInt(DESCRIPTIONS.length)]);
+        int extras = options.maxExtraSentences > 0 ? rnd.nextInt(options.maxExtraSentences + 1) : 0;
+        for (int i = 0; i < extras; i++) {
+            desc.append(' ').append(EXTRAS[rnd.nextInt(EXTRAS.length)]);
         }
-        p.setDescription(desc);
+        p.setDescription(desc.toString());
 
         return p;
     }
@@ -87,14 +214,33 @@ public class DatabaseGenerator {
         return Math.round(val * 100.0) / 100.0;
     }
 
-    private static String generateExtraDescription() {
-        String[] extras = {
-                "Бесплатная доставка по России.",
-                "Акция: скидка 15% при покупке 2 шт.",
-                "В наличии в 5 цветах.",
-                "Подарочная упаковка в комплекте.",
-                "Гарантия возврата 30 дней."
-        };
-        return extras[rnd.nextInt(extras.length)];
+    /** Зерно блока: перемешиваем seed и номер блока (финализатор SplitMix64) */
+    private static long mix(long seed, int block) {
+        long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Выбор индекса 0..n-1 с вероятностью ~ 1 / (i+1)^s; при s = 0 — равномерно */
+    private static class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom rnd) {
+            int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+            return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+        }
     }
-}
\ No newline at end of file
+}
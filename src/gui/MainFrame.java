@@ -3,17 +3,24 @@ package gui;
 
 
 import dao.Database;
+import dao.ImportResult;
 import dao.ProductDao;
+import dao.TaskMonitor;
 import model.Product;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.io.*;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.Optional;
 import javax.swing.table.JTableHeader;
 import java.awt.Color;
@@ -29,8 +36,21 @@ import javax.swing.JLabel;
         private JTable table;
         private ProductTableModel tableModel;
         private JLabel statusLabel;
+        private JButton cancelButton;
 
-        // Имена полей, которые понимает ProductDao.matchesField(...)
+        // операции с БД идут в этом потоке по одной; список — запущенные и ждущие (только в EDT)
+        private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "db-tasks");
+            t.setDaemon(true);
+            return t;
+        });
+        private final List<DbWorker<?>> activeTasks = new ArrayList<>();
+
+        // перезагрузка таблицы откладывается: серия запросов подряд даёт одну перезагрузку
+        private static final int RELOAD_DELAY_MS = 100;
+        private final Timer reloadTimer = new Timer(RELOAD_DELAY_MS, e -> doReloadTable());
+
+        // Имена полей для поиска и удаления по полю (ProductDao.findByField / deleteByField)
         private static final String[] PRODUCT_FIELDS = {
                 "product_id",
                 "seller_id",
@@ -42,6 +62,8 @@ import javax.swing.JLabel;
                 "category",
                 "description"
         };
+        // поиск по словам показывает столько самых релевантных записей
+        private static final int TEXT_SEARCH_LIMIT = 500;
         private static final Color HEADER_LILAC = new Color(220, 200, 255); // сиреневый
         private static final Color HEADER_TEXT  = Color.BLACK;
         private static final Color ROW_PINK     = new Color(255, 228, 240);
@@ -53,6 +75,7 @@ import javax.swing.JLabel;
 
             buildMenu();
             buildContent();
+            reloadTimer.setRepeats(false);
 
             updateStatus();
         }
@@ -116,8 +139,11 @@ import javax.swing.JLabel;
 
             JMenu exportMenu = new JMenu("Экспорт");
             JMenuItem miExportXlsx = new JMenuItem("Экспорт в XLSX...");
+            JMenuItem miImport = new JMenuItem("Импорт из XLSX/CSV...");
             miExportXlsx.addActionListener(e -> onExportXlsx());
+            miImport.addActionListener(e -> onImport());
             exportMenu.add(miExportXlsx);
+            exportMenu.add(miImport);
 
             mb.add(fileMenu);
             mb.add(dataMenu);
@@ -147,6 +173,11 @@ import javax.swing.JLabel;
             add(top, BorderLayout.NORTH);
 
             tableModel = new ProductTableModel();
+            tableModel.setPageErrorHandler(message -> statusLabel.setText("Ошибка чтения таблицы: " + message));
+            // число записей в строке состояния — вслед за изменениями таблицы
+            tableModel.addTableModelListener(e -> {
+                if (activeTasks.isEmpty()) updateStatus();
+            });
             table = new JTable(tableModel) {
                 @Override
                 public Component prepareRenderer(
@@ -166,7 +197,7 @@ import javax.swing.JLabel;
                     return c;
                 }
             };
-            table.setAutoCreateRowSorter(true);
+            // без RowSorter: сортировщику нужны все строки сразу, а модель грузит их страницами
             table.setFillsViewportHeight(true);
             JTableHeader header = table.getTableHeader();
             header.setDefaultRenderer(new DefaultTableCellRenderer() {
@@ -185,13 +216,17 @@ import javax.swing.JLabel;
                     return lbl;
                 }
             });
-            table.setAutoCreateRowSorter(true);
-            table.setFillsViewportHeight(true);
             add(new JScrollPane(table), BorderLayout.CENTER);
 
 
             statusLabel = new JLabel("БД не открыта");
-            add(statusLabel, BorderLayout.SOUTH);
+            cancelButton = new JButton("Отмена");
+            cancelButton.setVisible(false);
+            cancelButton.addActionListener(e -> onCancelTasks());
+            JPanel bottom = new JPanel(new BorderLayout());
+            bottom.add(statusLabel, BorderLayout.CENTER);
+            bottom.add(cancelButton, BorderLayout.EAST);
+            add(bottom, BorderLayout.SOUTH);
         }
 
         /* Работа с БД (обработчики) */
@@ -206,15 +241,17 @@ import javax.swing.JLabel;
                 Path dataPath = dataFile.toPath();
                 Path indexPath = getIndexPathForData(dataPath);
 
-                try {
-                    if (db != null && db.isOpen()) db.close();
-                    db = new ProductDao(dataPath, indexPath);
-                    db.create();
+                Database<Product, Integer> old = detachDatabase();
+                runTask("Создание БД", false, monitor -> {
+                    if (old != null && old.isOpen()) old.close();
+                    ProductDao created = new ProductDao(dataPath, indexPath);
+                    created.create();
+                    return created;
+                }, created -> {
+                    db = created;
                     reloadTable();
                     JOptionPane.showMessageDialog(this, "Новая база создана:\n" + dataPath);
-                } catch (Exception ex) {
-                    showError(ex);
-                }
+                });
             }
         }
 
@@ -228,54 +265,52 @@ import javax.swing.JLabel;
                 Path dataPath = dataFile.toPath();
                 Path indexPath = getIndexPathForData(dataPath);
 
-                try {
-                    if (db != null && db.isOpen()) db.close();
-                    db = new ProductDao(dataPath, indexPath);
-                    db.open();
+                // открытие может пересобирать индексы по всему .dat — не в EDT
+                Database<Product, Integer> old = detachDatabase();
+                runTask("Открытие БД", false, monitor -> {
+                    if (old != null && old.isOpen()) old.close();
+                    ProductDao opened = new ProductDao(dataPath, indexPath);
+                    opened.open();
+                    return opened;
+                }, opened -> {
+                    db = opened;
                     reloadTable();
-                } catch (Exception ex) {
-                    showError(ex);
-                }
+                });
             }
         }
 
         private void onSaveDB() {
             if (!ensureDbOpen()) return;
-            try {
-                db.save(); // в твоём DAO это сохранит индекс
-                JOptionPane.showMessageDialog(this, "Индекс/состояние сохранено.");
-            } catch (Exception ex) {
-                showError(ex);
-            }
+            Database<Product, Integer> target = db;
+            runTask("Сохранение индекса", false, monitor -> {
+                target.save(); // в твоём DAO это сохранит индекс
+                return null;
+            }, ignored -> JOptionPane.showMessageDialog(this, "Индекс/состояние сохранено."));
         }
 
         private void onCloseDB() {
             if (db == null || !db.isOpen()) return;
-            try {
-                db.close();
-                db = null;
-                tableModel.setProducts(new ArrayList<>());
-                updateStatus();
-            } catch (Exception ex) {
-                showError(ex);
-            }
+            Database<Product, Integer> old = detachDatabase();
+            runTask("Закрытие БД", false, monitor -> {
+                old.close();
+                return null;
+            }, ignored -> updateStatus());
         }
 
         private void onBackup() {
             if (!ensureDbOpen()) return;
 
-            try {
-                // backup в каталог "backup" рядом с файлом БД
-                Path dbPath = db.getDatabasePath().toAbsolutePath();
-                Path dir = dbPath.getParent() != null ? dbPath.getParent() : Paths.get(".");
-                Path backupDir = dir.resolve("backup");
+            // backup в каталог "backup" рядом с файлом БД
+            Path dbPath = db.getDatabasePath().toAbsolutePath();
+            Path dir = dbPath.getParent() != null ? dbPath.getParent() : Paths.get(".");
+            Path backupDir = dir.resolve("backup");
+            Database<Product, Integer> target = db;
+            runTask("Создание backup", false, monitor -> {
                 Files.createDirectories(backupDir);
-
-                db.backup(backupDir);
-                JOptionPane.showMessageDialog(this, "Backup создан в:\n" + backupDir.toAbsolutePath());
-            } catch (Exception ex) {
-                showError(ex);
-            }
+                target.backup(backupDir);
+                return null;
+            }, ignored -> JOptionPane.showMessageDialog(this,
+                    "Backup создан в:\n" + backupDir.toAbsolutePath()));
         }
 
         private void onRestore() {
@@ -289,13 +324,15 @@ import javax.swing.JLabel;
             if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
 
             File dir = fc.getSelectedFile();
-            try {
-                db.restore(dir.toPath());
+            Database<Product, Integer> target = db;
+            tableModel.setDatabase(null); // restore закрывает и переоткрывает файлы
+            runTask("Восстановление из backup", false, monitor -> {
+                target.restore(dir.toPath());
+                return null;
+            }, ignored -> {
                 reloadTable();
                 JOptionPane.showMessageDialog(this, "База восстановлена из:\n" + dir.getAbsolutePath());
-            } catch (Exception ex) {
-                showError(ex);
-            }
+            });
         }
 
         private void onDeleteDB() {
@@ -306,15 +343,11 @@ import javax.swing.JLabel;
                     JOptionPane.OK_CANCEL_OPTION);
             if (opt != JOptionPane.OK_OPTION) return;
 
-            try {
-                db.delete();
-                db = null;
-                tableModel.setProducts(new ArrayList<>());
-                updateStatus();
-                JOptionPane.showMessageDialog(this, "Файлы БД удалены.");
-            } catch (Exception ex) {
-                showError(ex);
-            }
+            Database<Product, Integer> old = detachDatabase();
+            runTask("Удаление БД", false, monitor -> {
+                old.delete();
+                return null;
+            }, ignored -> JOptionPane.showMessageDialog(this, "Файлы БД удалены."));
         }
 
         private void onClearDB() {
@@ -325,12 +358,11 @@ import javax.swing.JLabel;
                     JOptionPane.OK_CANCEL_OPTION);
             if (opt != JOptionPane.OK_OPTION) return;
 
-            try {
-                db.clear();
-                reloadTable();
-            } catch (Exception ex) {
-                showError(ex);
-            }
+            Database<Product, Integer> target = db;
+            runTask("Очистка БД", false, monitor -> {
+                target.clear();
+                return null;
+            }, ignored -> { }); // таблица перечитается по событию RELOADED
         }
 
         private void onAddRecord() {
@@ -346,19 +378,16 @@ import javax.swing.JLabel;
                 return;
             }
 
-            try {
-                boolean ok = db.insert(p);
+            Database<Product, Integer> target = db;
+            runTask("Добавление записи", false, monitor -> target.insert(p), ok -> {
                 if (!ok) {
                     JOptionPane.showMessageDialog(this,
                             "Товар с таким ID уже существует.",
                             "Ошибка уникальности ключа",
                             JOptionPane.ERROR_MESSAGE);
-                    return;
                 }
-                reloadTable();
-            } catch (Exception ex) {
-                showError(ex);
-            }
+                // новая строка появится в таблице по событию от БД
+            });
         }
 
         private void onEditSelected() {
@@ -371,12 +400,13 @@ import javax.swing.JLabel;
             }
             int modelRow = table.convertRowIndexToModel(row);
             Product current = tableModel.getProductAt(modelRow);
-            if (current == null) return;
+            if (current == null) return; // строка ещё не подгружена
 
             int key = current.getProduct_id();
+            Database<Product, Integer> target = db;
 
-            try {
-                Optional<Product> fromDb = db.findByKey(key);
+            // перечитываем запись из файла, диалог показываем уже в EDT
+            runTask("Чтение записи", false, monitor -> target.findByKey(key), fromDb -> {
                 if (fromDb.isEmpty()) {
                     JOptionPane.showMessageDialog(this,
                             "Запись с ID=" + key + " не найдена в файле (индекс устарел?)");
@@ -397,32 +427,45 @@ import javax.swing.JLabel;
                 // ключ менять нельзя: DAO пишет newRecord с тем же ключом
                 edited.setProduct_id(key);
 
-                boolean ok = db.updateByKey(key, edited);
-                if (!ok) {
-                    JOptionPane.showMessageDialog(this,
-                            "Не удалось обновить запись с ID=" + key,
-                            "Ошибка", JOptionPane.ERROR_MESSAGE);
-                } else {
-                    reloadTable();
-                }
-
-            } catch (Exception ex) {
-                showError(ex);
-            }
+                runTask("Сохранение записи", false, monitor -> target.updateByKey(key, edited), ok -> {
+                    if (!ok) {
+                        JOptionPane.showMessageDialog(this,
+                                "Не удалось обновить запись с ID=" + key,
+                                "Ошибка", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+            });
         }
 
         private void onSearch() {
             if (!ensureDbOpen()) return;
 
             SearchDialog.Result r = SearchDialog.showDialog(this,
-                    "Поиск по полю", PRODUCT_FIELDS);
+                    "Поиск по полю", PRODUCT_FIELDS, SearchDialog.Mode.values());
             if (r == null) return;
 
-            try {
-                List<Product> result = db.findByField(r.fieldName, r.value);
-                showSearchResults(result);
-            } catch (Exception ex) {
-                showError(ex);
+            Database<Product, Integer> target = db;
+            switch (r.mode) {
+                case RANGE:
+                    runTask("Поиск: " + r.fieldName + " от " + (r.value != null ? r.value : "…")
+                                    + " до " + (r.valueTo != null ? r.valueTo : "…"), true,
+                            monitor -> target.findByRange(r.fieldName, r.value, r.valueTo, monitor),
+                            this::showSearchResults);
+                    break;
+                case PREFIX:
+                    runTask("Поиск: " + r.fieldName + " начинается с " + r.value, true,
+                            monitor -> target.findByPrefix(r.fieldName, r.value, monitor),
+                            this::showSearchResults);
+                    break;
+                case TEXT:
+                    runTask("Поиск по словам: " + r.value, true,
+                            monitor -> target.searchText(r.value, TEXT_SEARCH_LIMIT, monitor),
+                            this::showSearchResults);
+                    break;
+                default:
+                    runTask("Поиск: " + r.fieldName + " = " + r.value, true,
+                            monitor -> target.findByField(r.fieldName, r.value, monitor),
+                            this::showSearchResults);
             }
         }
 
@@ -439,14 +482,13 @@ import javax.swing.JLabel;
                     JOptionPane.OK_CANCEL_OPTION);
             if (confirm != JOptionPane.OK_OPTION) return;
 
-            try {
-                int deleted = db.deleteByField(r.fieldName, r.value);
-                reloadTable();
-                JOptionPane.showMessageDialog(this,
-                        "Удалено записей: " + deleted);
-            } catch (Exception ex) {
-                showError(ex);
-            }
+            // удаление не отменяется: остановка на полпути оставила бы часть совпадений
+            Database<Product, Integer> target = db;
+            runTask("Удаление: " + r.fieldName + " = " + r.value, false,
+                    monitor -> target.deleteByField(r.fieldName, r.value), deleted -> {
+                        JOptionPane.showMessageDialog(this,
+                                "Удалено записей: " + deleted);
+                    });
         }
 
         private void onExportXlsx() {
@@ -460,19 +502,177 @@ import javax.swing.JLabel;
             if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
 
             File f = ensureExt(fc.getSelectedFile(), ".xlsx");
-            try {
-                System.out.println("Exporting XLSX to: " + f.getAbsolutePath()); // лог в консоль
-                db.exportToXlsx(f.toPath());
-                JOptionPane.showMessageDialog(this,
-                        "Экспортировано в:\n" + f.getAbsolutePath(),
-                        "Успех",
+            Database<Product, Integer> target = db;
+            runTask("Экспорт в XLSX", true, monitor -> {
+                target.exportToXlsx(f.toPath(), monitor);
+                return null;
+            }, ignored -> JOptionPane.showMessageDialog(this,
+                    "Экспортировано в:\n" + f.getAbsolutePath(),
+                    "Успех",
+                    JOptionPane.INFORMATION_MESSAGE));
+        }
+
+        private void onImport() {
+            if (!ensureDbOpen()) return;
+
+            JFileChooser fc = new JFileChooser();
+            fc.setDialogTitle("Импорт из XLSX/CSV");
+            fc.setFileFilter(new FileNameExtensionFilter("Таблицы (*.xlsx, *.csv)", "xlsx", "csv"));
+
+            if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+            File f = fc.getSelectedFile();
+            Database<Product, Integer> target = db;
+            runTask("Импорт из " + f.getName(), false, monitor -> target.importFrom(f.toPath()), result -> {
+                StringBuilder msg = new StringBuilder(result.toString());
+                List<ImportResult.RejectedRow> rejected = result.getRejectedRows();
+                for (int i = 0; i < Math.min(rejected.size(), 20); i++) {
+                    msg.append("\n").append(rejected.get(i));
+                }
+                if (rejected.size() > 20) {
+                    msg.append("\n...");
+                }
+                JOptionPane.showMessageDialog(this, msg.toString(), "Импорт",
                         JOptionPane.INFORMATION_MESSAGE);
-            } catch (Exception ex) {
-                ex.printStackTrace(); // важно, чтобы видеть стек-трейс
-                showError(ex);        // твой диалог с сообщением
+
+                if (!rejected.isEmpty() && JOptionPane.showConfirmDialog(this,
+                        "Сохранить отчёт об отклонённых строках?", "Импорт",
+                        JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                    JFileChooser rc = new JFileChooser();
+                    rc.setSelectedFile(new File(f.getParentFile(), "rejected.csv"));
+                    if (rc.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                        try {
+                            result.writeRejectedReport(ensureExt(rc.getSelectedFile(), ".csv").toPath());
+                        } catch (IOException ex) {
+                            showError(ex);
+                        }
+                    }
+                }
+            });
+        }
+
+        /* ====================== Фоновые операции ====================== */
+
+        /** Вызов БД, выполняемый вне EDT; monitor — для прогресса и отмены */
+        private interface DbCall<T> {
+            T call(TaskMonitor monitor) throws Exception;
+        }
+
+        /**
+         * Запускает операцию с БД в фоновом потоке, onSuccess вызывается в EDT.
+         * Операции выполняются по одной в порядке запуска, так что каждая видит
+         * результат предыдущих. Ход операции — в строке состояния; отмена
+         * (cancellable) кооперативная: DAO проверяет её между пачками, поток не прерывается,
+         * поэтому отменённая операция остаётся в очереди («отмена...»), пока вызов не вернётся.
+         */
+        private <T> void runTask(String title, boolean cancellable, DbCall<T> call, Consumer<T> onSuccess) {
+            DbWorker<T> worker = new DbWorker<>(title, cancellable, call, onSuccess);
+            activeTasks.add(worker);
+            updateTaskStatus();
+            dbExecutor.execute(worker);
+        }
+
+        private void onCancelTasks() {
+            for (DbWorker<?> task : new ArrayList<>(activeTasks)) {
+                if (task.cancellable) {
+                    task.cancel(false); // без interrupt: он закрыл бы канал файла
+                }
             }
         }
 
+        /** Текущая операция и её прогресс в строке состояния, кнопка отмены */
+        private void updateTaskStatus() {
+            if (activeTasks.isEmpty()) {
+                cancelButton.setVisible(false);
+                updateStatus();
+                return;
+            }
+            DbWorker<?> current = activeTasks.get(0);
+            StringBuilder text = new StringBuilder(current.title);
+            if (current.isCancelled()) {
+                text.append(": отмена...");
+            } else {
+                text.append("...");
+            }
+            if (!current.isCancelled() && current.getProgress() > 0) {
+                text.append(' ').append(current.getProgress()).append('%');
+            }
+            if (activeTasks.size() > 1) {
+                text.append(" (в очереди: ").append(activeTasks.size() - 1).append(')');
+            }
+            statusLabel.setText(text.toString());
+            cancelButton.setVisible(activeTasks.stream().anyMatch(t -> t.cancellable && !t.isCancelled()));
+        }
+
+        private final class DbWorker<T> extends SwingWorker<T, Void> implements TaskMonitor {
+            final String title;
+            final boolean cancellable;
+            private final DbCall<T> call;
+            private final Consumer<T> onSuccess;
+            // вызов начался (или уже не начнётся — отменён в очереди)
+            private final AtomicBoolean started = new AtomicBoolean();
+
+            DbWorker(String title, boolean cancellable, DbCall<T> call, Consumer<T> onSuccess) {
+                this.title = title;
+                this.cancellable = cancellable;
+                this.call = call;
+                this.onSuccess = onSuccess;
+                addPropertyChangeListener(e -> {
+                    if ("progress".equals(e.getPropertyName())) updateTaskStatus();
+                });
+            }
+
+            @Override
+            protected T doInBackground() throws Exception {
+                if (!started.compareAndSet(false, true)) {
+                    return null; // отменена в очереди, done() уже убрал её
+                }
+                try {
+                    return call.call(this);
+                } finally {
+                    SwingUtilities.invokeLater(this::finished);
+                }
+            }
+
+            /** В EDT, когда вызов БД действительно закончился (done() при отмене приходит раньше) */
+            private void finished() {
+                activeTasks.remove(this);
+                updateTaskStatus();
+                if (isCancelled()) {
+                    statusLabel.setText(title + ": отменено");
+                }
+            }
+
+            @Override
+            public void progress(long done, long total) {
+                if (total > 0) {
+                    setProgress((int) Math.min(100, done * 100 / total));
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    if (started.compareAndSet(false, true)) {
+                        finished(); // ещё не начиналась — ждать нечего
+                    } else {
+                        updateTaskStatus(); // вызов идёт до ближайшей проверки отмены
+                    }
+                    return;
+                }
+                try {
+                    onSuccess.accept(get());
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof CancellationException) {
+                        statusLabel.setText(title + ": отменено");
+                    } else {
+                        showError(ex.getCause());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
 
         /* ====================== Вспомогательные ====================== */
 
@@ -487,18 +687,25 @@ import javax.swing.JLabel;
             return true;
         }
 
+        /** Просит перезагрузить таблицу; запросы в пределах RELOAD_DELAY_MS сливаются в один */
         private void reloadTable() {
-            if (db == null || !db.isOpen()) {
-                tableModel.setProducts(new ArrayList<>());
-            } else {
-                try {
-                    List<Product> all = db.findAll(); // это всего лишь визуализация — по заданию можно
-                    tableModel.setProducts(all);
-                } catch (Exception ex) {
-                    showError(ex);
-                }
+            reloadTimer.restart();
+        }
+
+        private void doReloadTable() {
+            // строки подгрузятся страницами, когда таблица начнёт их рисовать
+            tableModel.setDatabase(db != null && db.isOpen() ? db : null);
+            if (activeTasks.isEmpty()) {
+                updateStatus();
             }
-            updateStatus();
+        }
+
+        /** Отцепляет текущую БД от окна (закрывать её будет фоновая операция) */
+        private Database<Product, Integer> detachDatabase() {
+            Database<Product, Integer> old = db;
+            db = null;
+            tableModel.setDatabase(null);
+            return old;
         }
 
         private void updateStatus() {
@@ -559,77 +766,13 @@ import javax.swing.JLabel;
             return dataPath.getParent().resolve(name + ".idx");
         }
 
-        private void showError(Exception ex) {
+        private void showError(Throwable ex) {
             ex.printStackTrace();
             JOptionPane.showMessageDialog(this,
                     ex.toString(),
                     "Ошибка",
                     JOptionPane.ERROR_MESSAGE);
         }
-
-        /* Табличная модель  */
-
-        private static class ProductTableModel extends AbstractTableModel {
-            private final String[] columns = {
-                    "ID товара", "ID продавца", "Название",
-                    "Цена", "Бренд", "Артикул",
-                    "Количество", "Категория", "Описание"
-            };
-            private final Class<?>[] classes = {
-                    Integer.class, Integer.class, String.class,
-                    Double.class, String.class, Integer.class,
-                    Integer.class, String.class, String.class
-            };
-
-            private List<Product> products = new ArrayList<>();
-
-            public void setProducts(List<Product> products) {
-                this.products = products;
-                fireTableDataChanged();
-            }
-
-            public Product getProductAt(int row) {
-                if (row < 0 || row >= products.size()) return null;
-                return products.get(row);
-            }
-
-            @Override
-            public int getRowCount() {
-                return products.size();
-            }
-
-            @Override
-            public int getColumnCount() {
-                return columns.length;
-            }
-
-            @Override
-            public String getColumnName(int column) {
-                return columns[column];
-            }
-
-            @Override
-            public Class<?> getColumnClass(int columnIndex) {
-                return classes[columnIndex];
-            }
-
-            @Override
-            public Object getValueAt(int rowIndex, int columnIndex) {
-                Product p = products.get(rowIndex);
-                switch (columnIndex) {
-                    case 0: return p.getProduct_id();
-                    case 1: return p.getSeller_id();
-                    case 2: return p.getName();
-                    case 3: return p.getPrice();
-                    case 4: return p.getBrand();
-                    case 5: return p.getArticle();
-                    case 6: return p.getStock_quantity();
-                    case 7: return p.getCategory();
-                    case 8: return p.getDescription();
-                }
-                return null;
-            }
-        }
     }
 
 
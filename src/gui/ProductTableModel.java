@@ -0,0 +1,315 @@
+package gui;
+
+import dao.DataChangeEvent;
+import dao.DataChangeListener;
+import dao.Database;
+import model.Product;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Табличная модель, которая не держит всю БД в памяти.
+ *
+ * Строки — записи по возрастанию product_id. Они подгружаются страницами
+ * по PAGE_SIZE через Database.findPage в фоновом потоке, только когда
+ * таблица их рисует; соседние страницы подгружаются заранее. В памяти
+ * держится не больше MAX_CACHED_PAGES последних использованных страниц.
+ * Пока страница не пришла, её ячейки пустые.
+ *
+ * Изменения БД приходят событиями (DataChangeListener) и применяются точечно:
+ * загруженная страница правится на месте, таблице сообщается об одной строке
+ * (fireTableRowsInserted/Updated/Deleted), более дальние страницы сдвинулись
+ * и просто выбрасываются. Если событий пришло слишком много сразу или позиция
+ * строки неизвестна, модель перечитывается целиком — это тоже дёшево.
+ *
+ * Все методы, кроме загрузчика, вызываются в потоке Swing (EDT).
+ */
+class ProductTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int PAGE_SIZE = 100;
+    private static final int MAX_CACHED_PAGES = 30;
+    /** Запрос страницы дальше этого от последней показанной уже не нужен — прокрутили мимо */
+    private static final int MAX_PAGE_DISTANCE = 3;
+    /** Больше событий за один разбор — проще перечитать таблицу, чем править по строке */
+    private static final int MAX_EVENTS_PER_BATCH = 1000;
+
+    private final String[] columns = {
+            "ID товара", "ID продавца", "Название",
+            "Цена", "Бренд", "Артикул",
+            "Количество", "Категория", "Описание"
+    };
+    private final Class<?>[] classes = {
+            Integer.class, Integer.class, String.class,
+            Double.class, String.class, Integer.class,
+            Integer.class, String.class, String.class
+    };
+
+    private Database<Product, Integer> db;
+    private ChangeQueue events; // подписка на изменения текущей db
+    private int rowCount;
+
+    // номер страницы -> записи; порядок доступа, самая старая вытесняется
+    private final Map<Integer, List<Product>> pages = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Product>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> requested = new HashSet<>(); // поставлены в очередь загрузки
+
+    // меняется при каждой смене данных; ответы загрузчика со старым номером выбрасываются
+    private volatile int generation;
+    private volatile int lastShownPage;
+
+    // куда сообщить, что страница не загрузилась (один раз на набор данных)
+    private Consumer<String> pageErrorHandler = message -> { };
+    private boolean pageErrorReported;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "table-page-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Показывает другую БД (или ничего, если db == null) и сбрасывает загруженные страницы */
+    public void setDatabase(Database<Product, Integer> db) {
+        if (this.db != null) {
+            this.db.removeChangeListener(events);
+        }
+        this.db = db;
+        events = null;
+        if (db != null) {
+            events = new ChangeQueue();
+            db.addChangeListener(events);
+        }
+        reload();
+    }
+
+    /** Кому сообщать об ошибке чтения страницы (например, в строку состояния) */
+    public void setPageErrorHandler(Consumer<String> handler) {
+        this.pageErrorHandler = handler;
+    }
+
+    /** Забывает загруженные страницы и перечитывает число строк */
+    private void reload() {
+        generation++;
+        pages.clear();
+        requested.clear();
+        pageErrorReported = false;
+        rowCount = db != null && db.isOpen() ? db.getRecordCount() : 0;
+        fireTableDataChanged();
+    }
+
+    /** Запись строки, если её страница уже загружена (иначе null и страница запрашивается) */
+    public Product getProductAt(int row) {
+        if (row < 0 || row >= rowCount) return null;
+        int page = row / PAGE_SIZE;
+        int i = row % PAGE_SIZE;
+        List<Product> rows = pages.get(page);
+        if (rows == null || i >= rows.size()) {
+            // страницы нет или она укоротилась после удаления и ещё не перечитана
+            lastShownPage = page;
+            requestPage(page, rows != null);
+        }
+        // соседние страницы — заранее, чтобы прокрутка не упиралась в пустые строки
+        requestPage(page + 1);
+        requestPage(page - 1);
+        return rows != null && i < rows.size() ? rows.get(i) : null;
+    }
+
+    private void requestPage(int page) {
+        requestPage(page, false);
+    }
+
+    /** refresh — перечитать страницу, даже если она загружена (старые строки видны, пока не придёт новая) */
+    private void requestPage(int page, boolean refresh) {
+        if (db == null || page < 0 || page * (long) PAGE_SIZE >= rowCount
+                || (!refresh && pages.containsKey(page)) || !requested.add(page)) {
+            return;
+        }
+        Database<Product, Integer> source = db;
+        int gen = generation;
+        loader.execute(() -> {
+            List<Product> rows = null;
+            String error = null;
+            if (gen == generation && Math.abs(page - lastShownPage) <= MAX_PAGE_DISTANCE) {
+                try {
+                    rows = source.findPage(page * PAGE_SIZE, PAGE_SIZE);
+                } catch (IOException ex) {
+                    // например, БД закрыли, пока страница ждала загрузки
+                    error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+                }
+            }
+            List<Product> loaded = rows;
+            String failure = error;
+            SwingUtilities.invokeLater(() -> pageLoaded(gen, page, loaded, failure));
+        });
+    }
+
+    private void pageLoaded(int gen, int page, List<Product> rows, String error) {
+        if (gen != generation) return;
+        requested.remove(page);
+        if (error != null && !pageErrorReported) {
+            pageErrorReported = true;
+            pageErrorHandler.accept(error);
+        }
+        if (rows == null) return; // пропущена: если снова понадобится, запросим ещё раз
+        pages.put(page, rows);
+        int first = page * PAGE_SIZE;
+        int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+        if (first <= last) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    /* ==================== События БД ==================== */
+
+    /**
+     * Подписка на одну БД: события складываются в очередь в потоке писателя
+     * и разбираются в EDT пачкой — на серию изменений один invokeLater.
+     */
+    private final class ChangeQueue implements DataChangeListener<Product, Integer> {
+        final Queue<DataChangeEvent<Product, Integer>> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        @Override
+        public void dataChanged(DataChangeEvent<Product, Integer> event) {
+            queue.add(event);
+            if (scheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> applyEvents(this));
+            }
+        }
+    }
+
+    private void applyEvents(ChangeQueue source) {
+        source.scheduled.set(false);
+        if (source != events) return; // события от БД, которую уже не показываем
+        List<DataChangeEvent<Product, Integer>> batch = new ArrayList<>();
+        for (DataChangeEvent<Product, Integer> e; (e = source.queue.poll()) != null; ) {
+            batch.add(e);
+        }
+        if (batch.size() > MAX_EVENTS_PER_BATCH) {
+            reload();
+            return;
+        }
+        for (DataChangeEvent<Product, Integer> e : batch) {
+            if (!apply(e)) {
+                reload(); // остальные события пачки уже учтены в перечитанном
+                return;
+            }
+        }
+    }
+
+    /** Применяет одно событие; false — точечно не получилось, нужна перезагрузка */
+    private boolean apply(DataChangeEvent<Product, Integer> e) {
+        int row = e.getRow();
+        switch (e.getType()) {
+            case INSERTED:
+                if (row < 0 || row > rowCount || e.getRecordCount() != rowCount + 1) return false;
+                rowCount++;
+                shiftPages(row, rows -> rows.add(row % PAGE_SIZE, e.getRecord()));
+                fireTableRowsInserted(row, row);
+                return true;
+            case DELETED:
+                if (row < 0 || row >= rowCount || e.getRecordCount() != rowCount - 1) return false;
+                rowCount--;
+                shiftPages(row, rows -> {
+                    if (row % PAGE_SIZE < rows.size()) rows.remove(row % PAGE_SIZE);
+                });
+                fireTableRowsDeleted(row, row);
+                return true;
+            case UPDATED:
+                if (row < 0 || row >= rowCount) return false;
+                List<Product> rows = pages.get(row / PAGE_SIZE);
+                if (rows != null && row % PAGE_SIZE < rows.size()) {
+                    rows.set(row % PAGE_SIZE, e.getRecord());
+                }
+                restartLoads(); // загружаемые сейчас страницы могли прочитать старую версию
+                fireTableRowsUpdated(row, row);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Вставка/удаление строки row: правит её страницу на месте, а страницы
+     * после неё выбрасывает — их строки сдвинулись на одну.
+     */
+    private void shiftPages(int row, Consumer<List<Product>> edit) {
+        int page = row / PAGE_SIZE;
+        pages.keySet().removeIf(p -> p > page);
+        List<Product> rows = pages.get(page);
+        if (rows != null) {
+            if (row % PAGE_SIZE <= rows.size()) {
+                edit.accept(rows);
+            }
+            if (rows.size() > PAGE_SIZE) {
+                rows.remove(rows.size() - 1); // ушла на следующую страницу
+            }
+        }
+        restartLoads();
+        int expected = Math.min(PAGE_SIZE, rowCount - page * PAGE_SIZE);
+        if (rows != null && rows.size() != expected) {
+            requestPage(page, true); // первая строка следующей страницы переехала сюда
+        }
+    }
+
+    /** Загрузки, начатые до изменения, выбрасываются и запрашиваются заново */
+    private void restartLoads() {
+        List<Integer> inFlight = new ArrayList<>(requested);
+        generation++;
+        requested.clear();
+        for (int page : inFlight) {
+            requestPage(page, true);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return classes[columnIndex];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Product p = getProductAt(rowIndex);
+        if (p == null) return null;
+        switch (columnIndex) {
+            case 0: return p.getProduct_id();
+            case 1: return p.getSeller_id();
+            case 2: return p.getName();
+            case 3: return p.getPrice();
+            case 4: return p.getBrand();
+            case 5: return p.getArticle();
+            case 6: return p.getStock_quantity();
+            case 7: return p.getCategory();
+            case 8: return p.getDescription();
+        }
+        return null;
+    }
+}
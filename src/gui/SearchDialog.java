@@ -2,42 +2,94 @@ package gui;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.Arrays;
 
 public class SearchDialog extends JDialog {
 
+    /** Условие поиска */
+    public enum Mode {
+        EQUALS("равно"),
+        RANGE("в диапазоне"),
+        PREFIX("начинается с"),
+        /** Слова в названии и описании, поле не выбирается */
+        TEXT("содержит слова");
+
+        private final String title;
+
+        Mode(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
     public static class Result {
         public final String fieldName;
+        public final Mode mode;
+        /** Значение (для RANGE — нижняя граница, null — без неё) */
         public final String value;
+        /** Верхняя граница для RANGE (null — без неё) */
+        public final String valueTo;
 
         public Result(String fieldName, String value) {
+            this(fieldName, Mode.EQUALS, value, null);
+        }
+
+        public Result(String fieldName, Mode mode, String value, String valueTo) {
             this.fieldName = fieldName;
+            this.mode = mode;
             this.value = value;
+            this.valueTo = valueTo;
         }
     }
 
     private JComboBox<String> cbField;
+    private JComboBox<Mode> cbMode;
     private JTextField tfValue;
+    private JTextField tfValueTo;
     private boolean okPressed = false;
     private Result result;
 
     // ВАЖНО: теперь owner = Frame, а не Window
-    public static Result showDialog(Frame owner, String title, String[] fields) {
-        SearchDialog dlg = new SearchDialog(owner, title, fields);
+    // modes — доступные условия; без них только "равно"
+    public static Result showDialog(Frame owner, String title, String[] fields, Mode... modes) {
+        SearchDialog dlg = new SearchDialog(owner, title, fields,
+                modes.length == 0 ? new Mode[]{Mode.EQUALS} : modes);
         dlg.setVisible(true);
         return dlg.okPressed ? dlg.result : null;
     }
 
     // тоже Frame и корректный super(...)
-    private SearchDialog(Frame owner, String title, String[] fields) {
+    private SearchDialog(Frame owner, String title, String[] fields, Mode[] modes) {
         super(owner, title, true);  // modal = true
         cbField = new JComboBox<>(fields);
+        cbMode = new JComboBox<>(modes);
         tfValue = new JTextField(20);
+        tfValueTo = new JTextField(20);
 
         JPanel form = new JPanel(new GridLayout(0, 2, 6, 6));
         form.add(new JLabel("Поле:"));
         form.add(cbField);
+        if (modes.length > 1) {
+            form.add(new JLabel("Условие:"));
+            form.add(cbMode);
+        }
         form.add(new JLabel("Значение:"));
         form.add(tfValue);
+        if (Arrays.asList(modes).contains(Mode.TEXT)) {
+            cbMode.addActionListener(e -> cbField.setEnabled(getMode() != Mode.TEXT));
+            cbField.setEnabled(getMode() != Mode.TEXT);
+        }
+        if (Arrays.asList(modes).contains(Mode.RANGE)) {
+            // для диапазона "Значение" — нижняя граница, пустая граница — без ограничения
+            form.add(new JLabel("до:"));
+            form.add(tfValueTo);
+            cbMode.addActionListener(e -> tfValueTo.setEnabled(getMode() == Mode.RANGE));
+            tfValueTo.setEnabled(getMode() == Mode.RANGE);
+        }
 
         JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton ok = new JButton("OK");
@@ -56,21 +108,32 @@ public class SearchDialog extends JDialog {
         setLocationRelativeTo(owner);
     }
 
+    private Mode getMode() {
+        return (Mode) cbMode.getSelectedItem();
+    }
+
     private void onOk() {
         String field = (String) cbField.getSelectedItem();
-        String value = tfValue.getText();
-        if (field == null || value == null || value.trim().isEmpty()) {
+        Mode mode = getMode();
+        String value = emptyToNull(tfValue.getText());
+        String valueTo = mode == Mode.RANGE ? emptyToNull(tfValueTo.getText()) : null;
+        boolean filled = mode == Mode.RANGE ? value != null || valueTo != null : value != null;
+        if (field == null || !filled) {
             JOptionPane.showMessageDialog(this,
-                    "Заполните значение.",
+                    mode == Mode.RANGE ? "Заполните хотя бы одну границу." : "Заполните значение.",
                     "Неверный ввод",
                     JOptionPane.ERROR_MESSAGE);
             return;
         }
-        this.result = new Result(field, value.trim());
+        this.result = new Result(field, mode, value, valueTo);
         this.okPressed = true;
         dispose();
     }
 
+    private static String emptyToNull(String s) {
+        return s == null || s.trim().isEmpty() ? null : s.trim();
+    }
+
     private void onCancel() {
         this.okPressed = false;
         this.result = null;